@@ -0,0 +1,84 @@
+package org.vilojona.services;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonarqube.ws.Issues.Issue;
+import org.springframework.util.FileSystemUtils;
+import org.vilojona.stub.SonarQubeStub;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Writing already generated AI fixes to the export files, in every format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportWriterBenchmark {
+
+    @Param("10000")
+    int fixCount;
+
+    @Param({"JSON", "NDJSON"})
+    ExportOptions.JsonFormat jsonFormat;
+
+    @Param({"false", "true"})
+    boolean gzip;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SonarQubeConnection connection = new SonarQubeConnection("http://localhost:9000", "", "");
+    private List<Issue> issues;
+    private List<IssueAndFix> fixes;
+    private Path directory;
+
+    @Setup
+    public void setUp() throws IOException {
+        var settings = SonarQubeStub.Settings.parse("issues=" + fixCount);
+        issues = IntStream.range(0, fixCount).mapToObj(index -> SonarQubeStub.issue(settings, index)).toList();
+        fixes = issues.stream()
+                .map(issue -> new IssueAndFix(issue.getComponent(), issue.getRule(), new AISuggestion(
+                        "fix-" + issue.getKey(), issue.getKey(),
+                        "The variable is never reassigned, making it final tells readers it is not meant to be.",
+                        List.of(new AISuggestion.Change(issue.getLine(), issue.getLine(),
+                                "        final int value = compute(" + issue.getLine() + ");")))))
+                .toList();
+        directory = Files.createTempDirectory("export-benchmark");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public int writeFixes() throws IOException {
+        var options = new ExportOptions(jsonFormat, false, gzip);
+        try (var writer = new FixExportWriter(connection, objectMapper, directory.resolve("export").toString(),
+                options)) {
+            for (var i = 0; i < fixCount; i++) {
+                writer.write(issues.get(i), fixes.get(i));
+            }
+            return writer.written();
+        }
+    }
+}
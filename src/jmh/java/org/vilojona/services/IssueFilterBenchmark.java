@@ -0,0 +1,84 @@
+package org.vilojona.services;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sonarqube.ws.Issues.Issue;
+import org.vilojona.stub.SonarQubeStub;
+
+/**
+ * Filtering, sorting and counting the issues of a scan, as the issues grid
+ * and the scan do. Every call uses another filter, so that the filter cached
+ * by the store is never reused.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IssueFilterBenchmark {
+
+    private static final String[] SEVERITIES = {"INFO", "MINOR", "MAJOR", "CRITICAL", "BLOCKER"};
+
+    @Param("100000")
+    int issueCount;
+
+    private List<Issue> issues;
+    private IssueStore store;
+    private IssueQuery query;
+    private int calls;
+
+    @Setup
+    public void setUp() {
+        var settings = SonarQubeStub.Settings.parse("issues=" + issueCount);
+        issues = IntStream.range(0, issueCount).mapToObj(index -> SonarQubeStub.issue(settings, index)).toList();
+        store = new IssueStore();
+        store.addAll(issues);
+        query = new IssueQuery(settings.project(), "MAJOR", "src/main/java/org/example/module3");
+    }
+
+    @Benchmark
+    public List<IssueRow> firstPageFilteredByRuleAndSortedBySeverity() {
+        var filter = new IssueStore.Filter(null, null, "S" + (100 + calls++ % 40), "module");
+        return store.fetch(filter, List.of(new IssueStore.Sort(IssueStore.Field.SEVERITY, true)), 0, 50);
+    }
+
+    @Benchmark
+    public int countFilteredByFile() {
+        return store.count(new IssueStore.Filter(null, null, null, "File" + calls++ % 2000 + "."));
+    }
+
+    @Benchmark
+    public Object countByFolder() {
+        return store.countBy(IssueStore.Field.FOLDER,
+                new IssueStore.Filter(null, SEVERITIES[calls++ % SEVERITIES.length], null, null));
+    }
+
+    @Benchmark
+    public IssueStore addAll() {
+        var newStore = new IssueStore();
+        newStore.addAll(issues);
+        return newStore;
+    }
+
+    @Benchmark
+    public void matchQuery(Blackhole blackhole) {
+        for (var issue : issues) {
+            blackhole.consume(query.matches(issue));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.vilojona.services;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonarqube.ws.Issues.Issue;
+import org.vilojona.stub.SonarQubeStub;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+
+/**
+ * A whole scan against the {@link SonarQubeStub}: paging through all the
+ * issues of the project, sliced past 10,000 of them, and probing each one for
+ * an AI fix, with the latency of a server on the network.
+ *
+ * The scan is the one behind every full scan, without the snapshot it is
+ * recorded in.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ScanThroughputBenchmark {
+
+    @Param("100000")
+    int issueCount;
+
+    @Param({"0ms", "20ms"})
+    String latency;
+
+    @Param("64")
+    int maxProbesInFlight;
+
+    private SonarQubeStub stub;
+    private SonarQubeClients clients;
+    private IssueScanService issueScanService;
+    private SonarQubeConnection connection;
+    private IssueQuery query;
+
+    @Setup
+    public void setUp() throws IOException {
+        var settings = SonarQubeStub.Settings.parse("port=0", "issues=" + issueCount, "latency=" + latency);
+        stub = new SonarQubeStub(settings);
+        var throttles = new ServerThrottles(8, 1, 64, 3, 5, Duration.ofSeconds(30), Duration.ofMinutes(2));
+        clients = new SonarQubeClients(throttles, Duration.ofSeconds(10), Duration.ofSeconds(60),
+                Duration.ofMinutes(10), Duration.ofMillis(500));
+        var metrics = new ApiMetrics(ObservationRegistry.NOOP, new SimpleMeterRegistry());
+        var fixAvailabilityService = new FixAvailabilityService(clients, metrics, maxProbesInFlight, 0,
+                Duration.ofSeconds(30));
+        issueScanService = new IssueScanService(clients, new FolderResolver(clients, 50), fixAvailabilityService,
+                null, metrics, 4, 4);
+        connection = new SonarQubeConnection(stub.url(), "", "");
+        query = new IssueQuery(settings.project(), null, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        clients.close();
+        stub.close();
+    }
+
+    @Benchmark
+    public List<Issue> scan() throws InterruptedException {
+        return issueScanService.getIssuesFilteredAndWithAIFix(connection, query, new CallStats(),
+                (progress, newIssuesWithAIFix) -> {
+                });
+    }
+}
@@ -0,0 +1,96 @@
+package org.vilojona.services;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vilojona.stub.SonarQubeStub;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reading the AI fixes SonarQube answers with, and turning them into the
+ * payload sent to SonarLint: the lines each change replaces are sliced out of
+ * the source, then the whole is written as JSON. Writing the payload by
+ * building a {@link SonarLintSuggestion} first is kept as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SuggestionBenchmark {
+
+    @Param("2000")
+    int linesPerFile;
+
+    @Param({"1", "5"})
+    int changes;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SonarLintPayloadWriter payloadWriter = new SonarLintPayloadWriter(objectMapper);
+    private String suggestionJson;
+    private AISuggestion suggestion;
+    private SourceFile sourceFile;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        var settings = SonarQubeStub.Settings.parse("lines-per-file=" + linesPerFile);
+        sourceFile = SourceFile.of(SonarQubeStub.source(settings, 0));
+        var step = linesPerFile / changes;
+        suggestion = new AISuggestion("fix-1", "AZ-1",
+                "The variable is never reassigned, making it final tells readers it is not meant to be.",
+                IntStream.range(0, changes)
+                        .mapToObj(change -> new AISuggestion.Change(1 + change * step, 3 + change * step,
+                                sourceFile.lines(1 + change * step, 3 + change * step)
+                                        .replace("int ", "final int ")))
+                        .toList());
+        suggestionJson = objectMapper.writeValueAsString(suggestion);
+    }
+
+    @Benchmark
+    public AISuggestion readSuggestion() throws JsonProcessingException {
+        return objectMapper.readValue(suggestionJson, AISuggestion.class);
+    }
+
+    @Benchmark
+    public byte[] writeSonarLintSuggestion() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(new SonarLintSuggestion(
+                suggestion.explanation(),
+                new SonarLintSuggestion.FileEdit(
+                        suggestion.changes().stream().map(change -> new SonarLintSuggestion.FileEdit.Change(
+                                change.newCode(),
+                                sourceFile.lines(change.startLine(), change.endLine()),
+                                new SonarLintSuggestion.FileEdit.Change.LineRange(
+                                        change.startLine(),
+                                        change.endLine())))
+                                .toList(),
+                        "src/main/java/File0.java"),
+                suggestion.id()));
+    }
+
+    @Benchmark
+    public SonarLintPayloadWriter.Payload writeSonarLintPayload() throws IOException {
+        return payloadWriter.write(suggestion, sourceFile, "src/main/java/File0.java");
+    }
+
+    @Benchmark
+    public List<String> sliceChangedLines() {
+        return suggestion.changes().stream().map(change -> sourceFile.lines(change.startLine(), change.endLine()))
+                .toList();
+    }
+}
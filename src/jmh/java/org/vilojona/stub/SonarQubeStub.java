@@ -0,0 +1,446 @@
+package org.vilojona.stub;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+import org.sonarqube.ws.Common;
+import org.sonarqube.ws.Components;
+import org.sonarqube.ws.Issues.Issue;
+import org.sonarqube.ws.Issues.SearchWsResponse;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A stand-in for a SonarQube server, serving generated issues, sources and AI
+ * fixes, for benchmarks and for end-to-end runs of the application without a
+ * real server.
+ *
+ * It serves {@code api/issues/search}, with the filters, sorts and the 10,000
+ * results limit the scan relies on, {@code api/sources/raw} and the
+ * {@code api/v2/fix-suggestions} endpoints, and lists its projects on
+ * {@code api/components/search}. Searches count the issues by project,
+ * severity, rule and directory when asked for those facets. Every response
+ * is delayed by {@code latency}, and AI fixes by {@code ai-latency} on top of
+ * it. With a {@code capacity}, the requests beyond that many in flight are
+ * answered 429 with a {@code Retry-After} of a second, like an overloaded
+ * server. With
+ * {@code shared-code}, all the files have the same code, so that the issues on
+ * the same line of different files get the same fix. Folders are not
+ * supported: {@code api/components/tree} is not served.
+ *
+ * Run it with {@code key=value} arguments, for instance
+ * {@code issues=100000 latency=20ms}, see {@link Settings#parse(String...)}.
+ */
+public final class SonarQubeStub implements AutoCloseable {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ")
+            .withZone(ZoneOffset.UTC);
+    private static final Instant FIRST_CREATION_DATE = Instant.parse("2020-01-01T00:00:00Z");
+    private static final Common.Severity[] SEVERITIES = {
+        Common.Severity.INFO,
+        Common.Severity.MINOR,
+        Common.Severity.MAJOR,
+        Common.Severity.CRITICAL,
+        Common.Severity.BLOCKER
+    };
+    private static final int MAX_RESULTS = 10_000;
+    private static final String FIX_SUGGESTIONS_ISSUES = "/api/v2/fix-suggestions/issues/";
+
+    private final Settings settings;
+    private final Issue[] issues;
+    // creation dates in epoch seconds, increasing with the index of the issue
+    private final long[] createdAt;
+    private final Map<String, Integer> indexByKey = new HashMap<>();
+    private final HttpServer server;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public SonarQubeStub(Settings settings) throws IOException {
+        this.settings = settings;
+        this.issues = new Issue[settings.issues()];
+        this.createdAt = new long[settings.issues()];
+        for (var i = 0; i < settings.issues(); i++) {
+            issues[i] = issue(settings, i);
+            createdAt[i] = date(issues[i].getCreationDate()).getEpochSecond();
+            indexByKey.put(issues[i].getKey(), i);
+        }
+
+        // without it, small responses wait for delayed acknowledgements, tens of milliseconds each
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(settings.port()), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/api/issues/search", exchange -> handle(exchange, this::search));
+        server.createContext("/api/components/search", exchange -> handle(exchange, this::searchProjects));
+        server.createContext("/api/sources/raw", exchange -> handle(exchange, this::source));
+        server.createContext(FIX_SUGGESTIONS_ISSUES, exchange -> handle(exchange, this::fixAvailability));
+        server.createContext("/api/v2/fix-suggestions/ai-suggestions", exchange -> handle(exchange, this::aiFix));
+        server.start();
+    }
+
+    /**
+     * The issue at the given index, one of the issues the stub serves.
+     */
+    public static Issue issue(Settings settings, int index) {
+        var created = DATE_FORMAT.format(FIRST_CREATION_DATE.plus(Duration.ofMinutes(index)));
+        var line = 1 + (index * 7) % settings.linesPerFile();
+        return Issue.newBuilder()
+                .setKey("AZ-" + index)
+                .setProject(project(settings, index))
+                .setRule("java:S" + (100 + index % 40))
+                .setSeverity(SEVERITIES[index % SEVERITIES.length])
+                .setComponent(project(settings, index) + ":" + path(index % settings.files()))
+                .setLine(line)
+                .setTextRange(Common.TextRange.newBuilder().setStartLine(line).setEndLine(line))
+                .setMessage("Make value" + line + " final")
+                .setCreationDate(created)
+                .setUpdateDate(created)
+                .build();
+    }
+
+    /**
+     * The key of the project of the issue at the given index: the issues are
+     * dealt to the projects in turn.
+     */
+    public static String project(Settings settings, int index) {
+        var project = index % settings.projects();
+        return project == 0 ? settings.project() : settings.project() + "-" + (project + 1);
+    }
+
+    /**
+     * The source of the file at the given index.
+     */
+    public static String source(Settings settings, int file) {
+        var source = new StringBuilder(settings.linesPerFile() * 48);
+        for (var line = 1; line <= settings.linesPerFile(); line++) {
+            source.append(lineOfCode(settings, file, line)).append('\n');
+        }
+        return source.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        var settings = Settings.parse(args);
+        try (var stub = new SonarQubeStub(settings)) {
+            System.out.println("Serving " + settings.issues() + " issues of " + settings.projects()
+                    + " projects named after " + settings.project() + " at " + stub.url());
+            new CountDownLatch(1).await();
+        }
+    }
+
+    public String url() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * The number of requests served so far.
+     */
+    public long requests() {
+        return requests.get();
+    }
+
+    /**
+     * The number of requests answered 429 so far, for being beyond capacity.
+     */
+    public long rejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        try (exchange) {
+            requests.incrementAndGet();
+            if (inFlight.incrementAndGet() > settings.capacity() && settings.capacity() > 0) {
+                rejected.incrementAndGet();
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                exchange.sendResponseHeaders(429, -1);
+                return;
+            }
+            sleep(settings.latency());
+            var response = handler.handle(exchange);
+            exchange.getResponseHeaders().add("Content-Type", response.contentType());
+            var length = response.body().length;
+            exchange.sendResponseHeaders(response.status(), length == 0 ? -1 : length);
+            exchange.getResponseBody().write(response.body());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private Response search(HttpExchange exchange) {
+        var query = query(exchange.getRequestURI());
+        var page = Integer.parseInt(query.getOrDefault("p", "1"));
+        var pageSize = Integer.parseInt(query.getOrDefault("ps", "100"));
+        if (page * pageSize > MAX_RESULTS && pageSize > 1) {
+            return Response.json(400, "{\"errors\":[{\"msg\":\"Can return only the first 10000 results\"}]}");
+        }
+
+        // the issues are in creation order, so a creation date window is a range of them
+        var from = query.containsKey("createdAfter") ? firstCreatedFrom(date(query.get("createdAfter"))) : 0;
+        var to = query.containsKey("createdBefore") ? firstCreatedFrom(date(query.get("createdBefore")))
+                : issues.length;
+        var matching = IntStream.range(from, Math.max(from, to)).filter(filter(query)).toArray();
+        var descending = "false".equals(query.get("asc"));
+        var first = Math.min((page - 1) * pageSize, matching.length);
+        var last = Math.min(page * pageSize, matching.length);
+
+        var response = SearchWsResponse.newBuilder();
+        for (var i = first; i < last; i++) {
+            response.addIssues(issues[matching[descending ? matching.length - 1 - i : i]]);
+        }
+        response.setPaging(Common.Paging.newBuilder().setPageIndex(page).setPageSize(pageSize)
+                .setTotal(matching.length));
+        if (query.containsKey("facets")) {
+            var facets = Common.Facets.newBuilder();
+            for (var property : query.get("facets").split(",")) {
+                facets.addFacets(facet(property, matching));
+            }
+            response.setFacets(facets);
+        }
+        return new Response(200, "application/x-protobuf", response.build().toByteArray());
+    }
+
+    private Common.Facet facet(String property, int[] matching) {
+        var counts = new HashMap<String, Long>();
+        for (var i : matching) {
+            var issue = issues[i];
+            var value = switch (property) {
+                case "projects" -> issue.getProject();
+                case "severities" -> issue.getSeverity().name();
+                case "rules" -> issue.getRule();
+                case "directories" -> issue.getComponent().substring(issue.getComponent().indexOf(':') + 1,
+                        issue.getComponent().lastIndexOf('/'));
+                default -> throw new IllegalArgumentException("Facet not supported: " + property);
+            };
+            counts.merge(value, 1L, Long::sum);
+        }
+        var facet = Common.Facet.newBuilder().setProperty(property);
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(count -> facet.addValues(Common.FacetValue.newBuilder().setVal(count.getKey())
+                        .setCount(count.getValue())));
+        return facet.build();
+    }
+
+    private Response searchProjects(HttpExchange exchange) {
+        var query = query(exchange.getRequestURI());
+        var page = Integer.parseInt(query.getOrDefault("p", "1"));
+        var pageSize = Integer.parseInt(query.getOrDefault("ps", "100"));
+        var response = Components.SearchWsResponse.newBuilder();
+        var projects = Math.min(settings.projects(), settings.issues());
+        for (var i = (page - 1) * pageSize; i < Math.min(page * pageSize, projects); i++) {
+            var key = project(settings, i);
+            response.addComponents(Components.Component.newBuilder().setKey(key).setName(key).setQualifier("TRK"));
+        }
+        response.setPaging(Common.Paging.newBuilder().setPageIndex(page).setPageSize(pageSize).setTotal(projects));
+        return new Response(200, "application/x-protobuf", response.build().toByteArray());
+    }
+
+    private IntPredicate filter(Map<String, String> query) {
+        IntPredicate filter = i -> true;
+        if (query.containsKey("projects")) {
+            var projects = Arrays.asList(query.get("projects").split(","));
+            filter = filter.and(i -> projects.contains(issues[i].getProject()));
+        }
+        if (query.containsKey("severities")) {
+            var severities = new HashSet<>(Arrays.asList(query.get("severities").split(",")));
+            filter = filter.and(i -> severities.contains(issues[i].getSeverity().name()));
+        }
+        if (query.containsKey("componentKeys")) {
+            var components = new HashSet<>(Arrays.asList(query.get("componentKeys").split(",")));
+            filter = filter.and(i -> components.contains(issues[i].getComponent()));
+        }
+        return filter;
+    }
+
+    private int firstCreatedFrom(Instant date) {
+        var index = Arrays.binarySearch(createdAt, date.getEpochSecond());
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private Response source(HttpExchange exchange) {
+        var component = query(exchange.getRequestURI()).get("key");
+        var file = component == null ? -1 : fileIndex(component.substring(component.indexOf(':') + 1));
+        if (file < 0) {
+            return Response.json(404, "{\"errors\":[{\"msg\":\"Component not found\"}]}");
+        }
+        return new Response(200, "text/plain", source(settings, file).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Response fixAvailability(HttpExchange exchange) {
+        var key = exchange.getRequestURI().getPath().substring(FIX_SUGGESTIONS_ISSUES.length());
+        var index = indexByKey.get(key);
+        if (index == null) {
+            return Response.json(404, "{\"message\":\"Issue not found\"}");
+        }
+        return Response.json(200, "{\"id\":\"" + key + "\",\"aiSuggestion\":\""
+                + (hasAIFix(index) ? "AVAILABLE" : "NOT_AVAILABLE") + "\"}");
+    }
+
+    private Response aiFix(HttpExchange exchange) throws IOException, InterruptedException {
+        var body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        var key = body.replaceAll("(?s).*\"issueId\"\\s*:\\s*\"([^\"]*)\".*", "$1");
+        var index = indexByKey.get(key);
+        if (index == null || !hasAIFix(index)) {
+            return Response.json(400, "{\"message\":\"No AI fix for issue " + key + "\"}");
+        }
+        sleep(settings.aiLatency());
+        var issue = issues[index];
+        var file = index % settings.files();
+        var fixedLine = lineOfCode(settings, file, issue.getLine()).replace("int ", "final int ");
+        return Response.json(200, "{\"id\":\"fix-" + key + "\",\"issueId\":\"" + key
+                + "\",\"explanation\":\"Make the variable final, as it is never reassigned.\","
+                + "\"changes\":[{\"startLine\":" + issue.getLine() + ",\"endLine\":" + issue.getLine()
+                + ",\"newCode\":\"" + fixedLine + "\"}]}");
+    }
+
+    private boolean hasAIFix(int index) {
+        return index % 1000 < settings.aiFixRatio() * 1000;
+    }
+
+    private int fileIndex(String path) {
+        var prefix = "src/main/java/org/example/module";
+        if (!path.startsWith(prefix) || !path.endsWith(".java")) {
+            return -1;
+        }
+        var file = Integer.parseInt(path.substring(path.lastIndexOf("/File") + 5, path.length() - 5));
+        return file < settings.files() && path.equals(path(file)) ? file : -1;
+    }
+
+    private static String path(int file) {
+        return "src/main/java/org/example/module" + file % 20 + "/File" + file + ".java";
+    }
+
+    private static String lineOfCode(Settings settings, int file, int line) {
+        return "        int value" + line + " = compute(" + (settings.sharedCode() ? "" : file + ", ") + line + ");";
+    }
+
+    private static Instant date(String value) {
+        return DATE_FORMAT.parse(value, Instant::from);
+    }
+
+    private static void sleep(Duration duration) throws InterruptedException {
+        if (!duration.isZero()) {
+            Thread.sleep(duration);
+        }
+    }
+
+    private static Map<String, String> query(URI uri) {
+        var query = new HashMap<String, String>();
+        if (uri.getRawQuery() != null) {
+            for (var parameter : uri.getRawQuery().split("&")) {
+                var nameAndValue = parameter.split("=", 2);
+                query.put(nameAndValue[0], nameAndValue.length > 1
+                        ? URLDecoder.decode(nameAndValue[1], StandardCharsets.UTF_8) : "");
+            }
+        }
+        return query;
+    }
+
+    /**
+     * How much the stub serves, and how slowly.
+     */
+    public record Settings(
+        int port,
+        String project,
+        int projects,
+        int issues,
+        int files,
+        int linesPerFile,
+        double aiFixRatio,
+        Duration latency,
+        Duration aiLatency,
+        int capacity,
+        boolean sharedCode
+    ) {
+
+        private static final Set<String> KEYS = Set.of("port", "project", "projects", "issues", "files",
+                "lines-per-file", "ai-fix-ratio", "latency", "ai-latency", "capacity", "shared-code");
+
+        /**
+         * Parses {@code key=value} arguments, the keys being {@code port},
+         * {@code project}, {@code projects}, {@code issues}, {@code files},
+         * {@code lines-per-file}, {@code ai-fix-ratio}, {@code latency},
+         * {@code ai-latency}, {@code capacity} and {@code shared-code}, with
+         * durations like {@code 20ms} or {@code 2s}. By default, 100,000 issues
+         * of project {@code stub}, in 2,000 different files of 300 lines, half of
+         * them with an AI fix, are served without delay and without limit on port
+         * 9000. With more projects, the next ones are {@code stub-2},
+         * {@code stub-3} and so on.
+         */
+        public static Settings parse(String... args) {
+            var values = new HashMap<String, String>();
+            for (var arg : args) {
+                var nameAndValue = arg.split("=", 2);
+                if (nameAndValue.length != 2 || !KEYS.contains(nameAndValue[0])) {
+                    throw new IllegalArgumentException("Not a setting: " + arg + ", settings are " + KEYS);
+                }
+                values.put(nameAndValue[0], nameAndValue[1]);
+            }
+            return new Settings(
+                    Integer.parseInt(values.getOrDefault("port", "9000")),
+                    values.getOrDefault("project", "stub"),
+                    Integer.parseInt(values.getOrDefault("projects", "1")),
+                    Integer.parseInt(values.getOrDefault("issues", "100000")),
+                    Integer.parseInt(values.getOrDefault("files", "2000")),
+                    Integer.parseInt(values.getOrDefault("lines-per-file", "300")),
+                    Double.parseDouble(values.getOrDefault("ai-fix-ratio", "0.5")),
+                    duration(values.getOrDefault("latency", "0ms")),
+                    duration(values.getOrDefault("ai-latency", "0ms")),
+                    Integer.parseInt(values.getOrDefault("capacity", "0")),
+                    Boolean.parseBoolean(values.getOrDefault("shared-code", "false")));
+        }
+
+        private static Duration duration(String value) {
+            if (value.endsWith("ms")) {
+                return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+            }
+            if (value.endsWith("s")) {
+                return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+            }
+            throw new IllegalArgumentException("Not a duration in ms or s: " + value);
+        }
+    }
+
+    private record Response(
+        int status,
+        String contentType,
+        byte[] body
+    ) {
+
+        static Response json(int status, String json) {
+            return new Response(status, "application/json", json.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Response handle(HttpExchange exchange) throws IOException, InterruptedException;
+    }
+}
@@ -1,9 +1,13 @@
 package org.vilojona;
 
 import com.vaadin.flow.component.page.AppShellConfigurator;
+import com.vaadin.flow.component.page.Push;
 import com.vaadin.flow.theme.Theme;
+import java.util.Arrays;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * The entry point of the Spring Boot application.
@@ -11,12 +15,24 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
  * Use the @PWA annotation make the application installable on phones, tablets
  * and some desktop browsers.
  *
+ * Server push lets long running scans update the views as results arrive.
+ *
+ * Started with {@code --headless}, the application runs the bulk fix export
+ * from the command line instead, without the web server and Vaadin, and exits
+ * when done.
+ *
  */
 @SpringBootApplication
+@EnableScheduling
+@Push
 @Theme(value = "bulk-fix")
 public class Application implements AppShellConfigurator {
 
     public static void main(String[] args) {
+        if (Arrays.asList(args).contains("--headless")) {
+            var context = new SpringApplicationBuilder(Application.class).profiles("headless").run(args);
+            System.exit(SpringApplication.exit(context));
+        }
         SpringApplication.run(Application.class, args);
     }
 }
@@ -0,0 +1,162 @@
+package org.vilojona.cli;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.ExitCodeGenerator;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.vilojona.services.BulkFixService;
+import org.vilojona.services.ExportOptions;
+import org.vilojona.services.IssueQuery;
+import org.vilojona.services.IssueScanService;
+import org.vilojona.services.PortfolioScanService;
+import org.vilojona.services.SonarQubeConnection;
+
+/**
+ * Exports the AI fixes of one or more projects without the UI, for instance
+ * from a nightly job:
+ *
+ * <pre>
+ * java -jar bulk-fix.jar --headless --url=https://sonarqube.example.com --user=... --password=... \
+ *     --project=first-project,second-project|--all-projects [--severity=MAJOR] [--folder=src/main] \
+ *     [--branch=main] [--prefix=codefix-issues-output-] [--format=json|ndjson] [--mbox] [--gzip] [--incremental] \
+ *     [--apply-to=path/to/checkout]
+ * </pre>
+ *
+ * With {@code --mbox}, the fixes are also written as git patches, one per
+ * file, that {@code git am} applies. With {@code --incremental}, only the
+ * issues changed since the last run are rescanned. With {@code --apply-to},
+ * the fixes are applied to the files of a local checkout instead of being
+ * exported. With {@code --all-projects}, the fixes of every project of the
+ * server are scanned concurrently and exported to one set of files, along with
+ * a summary of each project.
+ */
+@Component
+@Profile("headless")
+public class BulkFixCommandLineRunner implements ApplicationRunner, ExitCodeGenerator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkFixCommandLineRunner.class);
+
+    private final BulkFixService bulkFixService;
+    private int exitCode;
+
+    public BulkFixCommandLineRunner(BulkFixService bulkFixService) {
+        this.bulkFixService = bulkFixService;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        var projects = values(args, "project");
+        var allProjects = args.containsOption("all-projects");
+        var checkoutRoot = value(args, "apply-to", null);
+        var jsonFormat = jsonFormat(value(args, "format", "json"));
+        if (projects.isEmpty() == !allProjects || (allProjects && checkoutRoot != null) || jsonFormat == null) {
+            LOGGER.error("Usage: --headless --url=<SonarQube URL> --user=<user> --password=<password> "
+                    + "--project=<key>[,<key>...]|--all-projects [--severity=<severity>] [--folder=<folder>] "
+                    + "[--branch=<branch>] [--prefix=<files prefix>] [--format=json|ndjson] [--mbox] [--gzip] "
+                    + "[--incremental] [--apply-to=<checkout directory>, not with --all-projects]");
+            exitCode = 2;
+            return;
+        }
+
+        var connection = new SonarQubeConnection(value(args, "url", "http://localhost:9000"),
+                value(args, "user", ""), value(args, "password", ""));
+        var options = new ExportOptions(
+                jsonFormat,
+                args.containsOption("mbox"),
+                args.containsOption("gzip"));
+        var incremental = args.containsOption("incremental");
+        if (allProjects) {
+            exportPortfolio(args, connection, options, incremental);
+            return;
+        }
+        for (var project : projects) {
+            var query = new IssueQuery(project, value(args, "severity", null), value(args, "folder", ""));
+            var fileName = BulkFixService.getOutputFileName(value(args, "prefix", "codefix-issues-output-"), query,
+                    value(args, "branch", ""));
+            IssueScanService.ScanListener listener = (progress, newIssuesWithAIFix) -> LOGGER.debug("{}: {}",
+                    project, progress);
+            try {
+                if (checkoutRoot != null) {
+                    var result = bulkFixService.applyFixes(connection, query, incremental, Path.of(checkoutRoot),
+                            listener);
+                    result.conflicts().forEach(conflict -> LOGGER.warn("{}: AI fix of issue {} not applied, {}",
+                            project, conflict.issue().getKey(), conflict.reason()));
+                    LOGGER.info("{}: applied {} AI fixes to {} files in {}, {} not applied", project,
+                            result.applied().size(), result.filesChanged(), checkoutRoot, result.conflicts().size());
+                } else {
+                    var exported = bulkFixService.exportFixes(connection, query, incremental, fileName, options,
+                            listener);
+                    LOGGER.info("{}: exported {} AI fixes to {}", project, exported, fileName);
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("{}: {} failed", project, checkoutRoot != null ? "applying fixes" : "export", e);
+                exitCode = 1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                exitCode = 130;
+                return;
+            }
+        }
+    }
+
+    private void exportPortfolio(ApplicationArguments args, SonarQubeConnection connection, ExportOptions options,
+            boolean incremental) {
+        var query = new IssueQuery(PortfolioScanService.ALL_PROJECTS, value(args, "severity", null),
+                value(args, "folder", ""));
+        var fileName = BulkFixService.getOutputFileName(value(args, "prefix", "codefix-issues-output-"), query,
+                value(args, "branch", ""));
+        try {
+            var exported = bulkFixService.exportPortfolioFixes(connection, query.severity(), query.folder(),
+                    incremental, fileName, options, (project, portfolioProgress, newIssuesWithAIFix) -> {
+                        switch (project.status()) {
+                            case DONE -> LOGGER.info("{}: {} issues with an AI fix", project.project(),
+                                    project.progress().withAIFix());
+                            case FAILED -> {
+                                LOGGER.error("{}: scan failed, {}", project.project(), project.failure());
+                                exitCode = 1;
+                            }
+                            default -> LOGGER.debug("{}: {}", project.project(), project.progress());
+                        }
+                    });
+            LOGGER.info("Exported {} AI fixes of all projects to {}", exported, fileName);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Export of all projects failed", e);
+            exitCode = 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exitCode = 130;
+        }
+    }
+
+    @Override
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    private static List<String> values(ApplicationArguments args, String name) {
+        var values = args.getOptionValues(name);
+        return values == null ? List.of()
+                : values.stream().flatMap(value -> Arrays.stream(value.split(","))).map(String::trim)
+                        .filter(value -> !value.isEmpty()).toList();
+    }
+
+    private static ExportOptions.JsonFormat jsonFormat(String format) {
+        return Arrays.stream(ExportOptions.JsonFormat.values())
+                .filter(jsonFormat -> jsonFormat.name().equalsIgnoreCase(format))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static String value(ApplicationArguments args, String name, String defaultValue) {
+        var values = args.getOptionValues(name);
+        return values == null || values.isEmpty() ? defaultValue : values.get(0);
+    }
+}
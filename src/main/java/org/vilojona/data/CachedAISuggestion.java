@@ -0,0 +1,74 @@
+package org.vilojona.data;
+
+import java.time.Instant;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Lob;
+import jakarta.persistence.Table;
+
+/**
+ * An AI suggestion already generated for an issue, valid as long as the source
+ * file it was generated for has not changed.
+ */
+@Entity
+@Table(indexes = {
+        @Index(columnList = "createdAt"),
+        @Index(columnList = "lastUsedAt")
+})
+public class CachedAISuggestion {
+
+    @Id
+    private String id;
+    private String issueKey;
+    private String sourceHash;
+    @Lob
+    private String suggestion;
+    private Instant createdAt;
+    private Instant lastUsedAt;
+
+    protected CachedAISuggestion() {
+    }
+
+    public CachedAISuggestion(String issueKey, String sourceHash, String suggestion) {
+        this.id = id(issueKey, sourceHash);
+        this.issueKey = issueKey;
+        this.sourceHash = sourceHash;
+        this.suggestion = suggestion;
+        this.createdAt = Instant.now();
+        this.lastUsedAt = createdAt;
+    }
+
+    public static String id(String issueKey, String sourceHash) {
+        return issueKey + "@" + sourceHash;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getIssueKey() {
+        return issueKey;
+    }
+
+    public String getSourceHash() {
+        return sourceHash;
+    }
+
+    public String getSuggestion() {
+        return suggestion;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    public void setLastUsedAt(Instant lastUsedAt) {
+        this.lastUsedAt = lastUsedAt;
+    }
+}
@@ -0,0 +1,19 @@
+package org.vilojona.data;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+public interface CachedAISuggestionRepository extends JpaRepository<CachedAISuggestion, String> {
+
+    @Modifying
+    @Query("delete from CachedAISuggestion c where c.createdAt < :createdBefore")
+    int deleteCreatedBefore(Instant createdBefore);
+
+    @Query("select c.id from CachedAISuggestion c order by c.lastUsedAt asc")
+    List<String> findLeastRecentlyUsedIds(Pageable pageable);
+}
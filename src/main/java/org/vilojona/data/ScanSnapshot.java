@@ -0,0 +1,65 @@
+package org.vilojona.data;
+
+import java.time.Instant;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+/**
+ * The last scan of a query on a SonarQube server. The issues it found are
+ * {@link SnapshotIssue}s.
+ */
+@Entity
+public class ScanSnapshot {
+
+    @Id
+    private String id;
+    private String server;
+    private String project;
+    private String severity;
+    private String folder;
+    /**
+     * When the last complete scan started, or null while the first full scan is
+     * still running.
+     */
+    private Instant scanStartedAt;
+
+    protected ScanSnapshot() {
+    }
+
+    public ScanSnapshot(String id, String server, String project, String severity, String folder) {
+        this.id = id;
+        this.server = server;
+        this.project = project;
+        this.severity = severity;
+        this.folder = folder;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getServer() {
+        return server;
+    }
+
+    public String getProject() {
+        return project;
+    }
+
+    public String getSeverity() {
+        return severity;
+    }
+
+    public String getFolder() {
+        return folder;
+    }
+
+    public Instant getScanStartedAt() {
+        return scanStartedAt;
+    }
+
+    public void setScanStartedAt(Instant scanStartedAt) {
+        this.scanStartedAt = scanStartedAt;
+    }
+}
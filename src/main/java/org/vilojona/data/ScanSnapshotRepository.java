@@ -0,0 +1,6 @@
+package org.vilojona.data;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ScanSnapshotRepository extends JpaRepository<ScanSnapshot, String> {
+}
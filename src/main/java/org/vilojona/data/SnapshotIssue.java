@@ -0,0 +1,62 @@
+package org.vilojona.data;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Lob;
+import jakarta.persistence.Table;
+
+/**
+ * An issue matching the query of a {@link ScanSnapshot}, as it was when last
+ * scanned, and whether it had an AI fix available.
+ */
+@Entity
+@Table(indexes = @Index(columnList = "snapshotId, aiFixAvailable"))
+public class SnapshotIssue {
+
+    @Id
+    private String id;
+    private String snapshotId;
+    private String issueKey;
+    private boolean aiFixAvailable;
+    /**
+     * The issue, as the protobuf message returned by SonarQube.
+     */
+    @Lob
+    private byte[] issue;
+
+    protected SnapshotIssue() {
+    }
+
+    public SnapshotIssue(String snapshotId, String issueKey, boolean aiFixAvailable, byte[] issue) {
+        this.id = id(snapshotId, issueKey);
+        this.snapshotId = snapshotId;
+        this.issueKey = issueKey;
+        this.aiFixAvailable = aiFixAvailable;
+        this.issue = issue;
+    }
+
+    public static String id(String snapshotId, String issueKey) {
+        return snapshotId + ":" + issueKey;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getSnapshotId() {
+        return snapshotId;
+    }
+
+    public String getIssueKey() {
+        return issueKey;
+    }
+
+    public boolean isAiFixAvailable() {
+        return aiFixAvailable;
+    }
+
+    public byte[] getIssue() {
+        return issue;
+    }
+}
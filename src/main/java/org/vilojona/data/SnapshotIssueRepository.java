@@ -0,0 +1,18 @@
+package org.vilojona.data;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+public interface SnapshotIssueRepository extends JpaRepository<SnapshotIssue, String> {
+
+    List<SnapshotIssue> findBySnapshotIdAndAiFixAvailableTrue(String snapshotId);
+
+    long countBySnapshotId(String snapshotId);
+
+    @Modifying
+    @Query("delete from SnapshotIssue i where i.snapshotId = :snapshotId")
+    int deleteBySnapshotId(String snapshotId);
+}
@@ -1,4 +1,4 @@
-package org.vilojona.views.bulk;
+package org.vilojona.services;
 
 import java.util.List;
 
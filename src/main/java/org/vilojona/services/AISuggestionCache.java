@@ -0,0 +1,85 @@
+package org.vilojona.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.vilojona.data.CachedAISuggestion;
+import org.vilojona.data.CachedAISuggestionRepository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Keeps the AI suggestions already generated in the local database, keyed by
+ * issue and by the hash of the source file they were generated for, so that
+ * exporting or sending the same fix again costs no AI call.
+ *
+ * Entries expire after a time to live, and when there are more than the
+ * maximum number of entries the least recently used ones are evicted.
+ */
+@Service
+public class AISuggestionCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AISuggestionCache.class);
+
+    private final CachedAISuggestionRepository repository;
+    private final ObjectMapper objectMapper;
+    private final Duration timeToLive;
+    private final int maxEntries;
+
+    public AISuggestionCache(CachedAISuggestionRepository repository, ObjectMapper objectMapper,
+            @Value("${bulkfix.cache.suggestions.ttl:7d}") Duration timeToLive,
+            @Value("${bulkfix.cache.suggestions.max-entries:50000}") int maxEntries) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.timeToLive = timeToLive;
+        this.maxEntries = maxEntries;
+    }
+
+    @Transactional
+    public Optional<AISuggestion> get(String issueKey, String sourceHash) {
+        return repository.findById(CachedAISuggestion.id(issueKey, sourceHash))
+                .filter(cached -> cached.getCreatedAt().isAfter(Instant.now().minus(timeToLive)))
+                .map(cached -> {
+                    cached.setLastUsedAt(Instant.now());
+                    return read(cached);
+                });
+    }
+
+    public void put(String issueKey, String sourceHash, AISuggestion suggestion) {
+        try {
+            repository.save(new CachedAISuggestion(issueKey, sourceHash, objectMapper.writeValueAsString(suggestion)));
+        } catch (JsonProcessingException | DataIntegrityViolationException e) {
+            // another thread cached the same suggestion, or it cannot be cached: either way it is not needed
+            LOGGER.debug("AI suggestion for issue {} not cached", issueKey, e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${bulkfix.cache.suggestions.eviction-interval:PT10M}")
+    @Transactional
+    public void evict() {
+        var expired = repository.deleteCreatedBefore(Instant.now().minus(timeToLive));
+        var excess = repository.count() - maxEntries;
+        if (excess > 0) {
+            repository.deleteAllByIdInBatch(repository.findLeastRecentlyUsedIds(PageRequest.of(0, (int) excess)));
+        }
+        LOGGER.debug("Evicted {} expired and {} least recently used AI suggestions", expired, Math.max(excess, 0));
+    }
+
+    private AISuggestion read(CachedAISuggestion cached) {
+        try {
+            return objectMapper.readValue(cached.getSuggestion(), AISuggestion.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Corrupted cached AI suggestion " + cached.getId(), e);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.vilojona.services;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonarqube.ws.Issues.Issue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Asks SonarQube to generate the AI fix of an issue.
+ *
+ * Generating a fix can take seconds, and a busy server answers with 429 or a
+ * 5xx status. Those requests are retried with an exponential, jittered
+ * backoff before giving up, unless the server tells how long to wait with
+ * {@code Retry-After}, which the {@link EndpointThrottle} waits for. Fixes
+ * already generated for the current version of a file are served from the
+ * {@link AISuggestionCache} instead, and a batch of issues asks only once for
+ * the issues that would get the same fix, see {@link FixTemplates}.
+ */
+@Service
+public class AISuggestionService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AISuggestionService.class);
+    private static final String API_V2_FIX_SUGGESTIONS_AI_SUGGESTIONS = "/api/v2/fix-suggestions/ai-suggestions/";
+
+    private final SonarQubeClients clients;
+    private final SourceService sourceService;
+    private final AISuggestionCache cache;
+    private final ObjectMapper objectMapper;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration timeout;
+    private final boolean reuseFixes;
+    private final ApiMetrics metrics;
+
+    public AISuggestionService(SonarQubeClients clients, SourceService sourceService, AISuggestionCache cache,
+            ObjectMapper objectMapper, ApiMetrics metrics,
+            @Value("${bulkfix.suggestions.max-attempts:4}") int maxAttempts,
+            @Value("${bulkfix.suggestions.initial-backoff:1s}") Duration initialBackoff,
+            @Value("${bulkfix.suggestions.timeout:120s}") Duration timeout,
+            @Value("${bulkfix.suggestions.reuse-identical-fixes:true}") boolean reuseFixes) {
+        this.clients = clients;
+        this.sourceService = sourceService;
+        this.cache = cache;
+        this.objectMapper = objectMapper;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.timeout = timeout;
+        this.reuseFixes = reuseFixes;
+        this.metrics = metrics;
+    }
+
+    public IssueAndFix fetchAiSuggestionsForIssue(SonarQubeConnection connection, Issue issue)
+            throws IOException, InterruptedException {
+        var sourceHash = sourceService.getCodeFileHash(connection, issue.getComponent());
+        var cached = cache.get(issue.getKey(), sourceHash);
+        if (cached.isPresent()) {
+            return new IssueAndFix(issue.getComponent(), issue.getRule(), cached.get());
+        }
+        return generate(connection, issue, sourceHash);
+    }
+
+    /**
+     * Creates the fetcher of the fixes of a batch of issues, generating at
+     * most {@code maxInFlight} of them at once.
+     */
+    FixTemplates newFixTemplates(SonarQubeConnection connection, int maxInFlight) {
+        return new FixTemplates(this, sourceService, cache, connection, reuseFixes, maxInFlight);
+    }
+
+    /**
+     * Asks SonarQube to generate the fix of the issue, whether or not it is
+     * cached, and caches it.
+     */
+    IssueAndFix generate(SonarQubeConnection connection, Issue issue, String sourceHash)
+            throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder()
+                .uri(URI.create(connection.url() + API_V2_FIX_SUGGESTIONS_AI_SUGGESTIONS))
+                .header("Authorization", connection.authorization())
+                .POST(BodyPublishers.ofString("{\"issueId\": \"" + issue.getKey() + "\"}"))
+                .header("Content-Type", "application/json")
+                .timeout(timeout)
+                .build();
+
+        var response = send(connection, request, issue);
+        LOGGER.debug("AI suggestions for issue {} are: {}", issue.getKey(), response.body());
+        if (response.statusCode() != 200) {
+            throw new IOException("No AI fix for issue " + issue.getKey() + ", SonarQube answered "
+                    + response.statusCode() + ": " + errorMessage(response.body()));
+        }
+
+        var aiSuggestion = objectMapper.readValue(response.body(), AISuggestion.class);
+        cache.put(issue.getKey(), sourceHash, aiSuggestion);
+        return new IssueAndFix(issue.getComponent(), issue.getRule(), aiSuggestion);
+    }
+
+    private HttpResponse<String> send(SonarQubeConnection connection, HttpRequest request, Issue issue)
+            throws IOException, InterruptedException {
+        for (var attempt = 1;; attempt++) {
+            var response = metrics.observe(ApiMetrics.Call.AI_SUGGESTION, null,
+                    () -> clients.send(connection, ApiMetrics.Call.AI_SUGGESTION, request, BodyHandlers.ofString()));
+            if (!isRetryable(response.statusCode()) || attempt == maxAttempts) {
+                return response;
+            }
+            metrics.retried(ApiMetrics.Call.AI_SUGGESTION);
+            if (response.headers().firstValue("Retry-After").isPresent()) {
+                // the throttle holds the next attempt back for as long as asked
+                LOGGER.info("AI suggestion for issue {} got status {}, retrying when the server asks to",
+                        issue.getKey(), response.statusCode());
+                continue;
+            }
+            var backoff = initialBackoff.toMillis() << (attempt - 1);
+            LOGGER.info("AI suggestion for issue {} got status {}, retrying in {} ms", issue.getKey(),
+                    response.statusCode(), backoff);
+            Thread.sleep(backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+        }
+    }
+
+    /**
+     * The message of a SonarQube error response, or the whole body when it has
+     * none.
+     */
+    private String errorMessage(String body) {
+        try {
+            var error = objectMapper.readTree(body);
+            var message = error.path("message");
+            if (message.isTextual()) {
+                return message.asText();
+            }
+            var errors = error.path("errors").path(0).path("msg");
+            return errors.isTextual() ? errors.asText() : body;
+        } catch (IOException e) {
+            return body;
+        }
+    }
+
+    private static boolean isRetryable(int statusCode) {
+        return statusCode == 429 || statusCode >= 500;
+    }
+}
@@ -0,0 +1,140 @@
+package org.vilojona.services;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+
+/**
+ * Observes every call to SonarQube and SonarLint.
+ *
+ * A call is timed by the {@code bulkfix.api.calls} timer, tagged with the
+ * {@code call} and its {@code outcome}, and counted by
+ * {@code bulkfix.api.calls.active} while it is in flight. Calls answered with
+ * an error status are tagged with an {@code ERROR} outcome just like those
+ * that fail, and retries are counted by {@code bulkfix.api.retries}. Calls
+ * become spans as well when a tracer is configured. Calls made for a scan are
+ * also added up in its {@link CallStats}.
+ */
+@Service
+public class ApiMetrics {
+
+    static final String CALLS = "bulkfix.api.calls";
+    static final String RETRIES = "bulkfix.api.retries";
+
+    private final ObservationRegistry observationRegistry;
+    private final MeterRegistry meterRegistry;
+
+    public ApiMetrics(ObservationRegistry observationRegistry, MeterRegistry meterRegistry) {
+        this.observationRegistry = observationRegistry;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Makes the call, observing it. The stats, if any, are those of the scan
+     * the call is made for.
+     */
+    // the scope is only opened so that the call is made within the observation
+    @SuppressWarnings("try")
+    public <T> T observe(Call call, CallStats stats, ApiCall<T> apiCall) throws IOException, InterruptedException {
+        var observation = start(call);
+        var startedAt = System.nanoTime();
+        try {
+            T result;
+            try (var scope = observation.openScope()) {
+                result = apiCall.call();
+            }
+            stop(call, stats, observation, startedAt, result, null);
+            return result;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            stop(call, stats, observation, startedAt, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Makes a call through a client that only throws unchecked exceptions,
+     * like the {@code WsClient}.
+     */
+    public <T> T observeUnchecked(Call call, CallStats stats, Supplier<T> apiCall) {
+        try {
+            return observe(call, stats, apiCall::get);
+        } catch (IOException | InterruptedException e) {
+            throw new IllegalStateException("Unexpected checked exception", e);
+        }
+    }
+
+    /**
+     * Starts an asynchronous call, observing it until it completes.
+     */
+    public <T> CompletableFuture<T> observeAsync(Call call, CallStats stats, Supplier<CompletableFuture<T>> apiCall) {
+        var observation = start(call);
+        var startedAt = System.nanoTime();
+        try {
+            return apiCall.get()
+                    .whenComplete((result, e) -> stop(call, stats, observation, startedAt, result, e));
+        } catch (RuntimeException e) {
+            stop(call, stats, observation, startedAt, null, e);
+            throw e;
+        }
+    }
+
+    public void retried(Call call) {
+        meterRegistry.counter(RETRIES, "call", call.tagValue()).increment();
+    }
+
+    private Observation start(Call call) {
+        return Observation.createNotStarted(CALLS, observationRegistry)
+                .contextualName(call.tagValue())
+                .lowCardinalityKeyValue("call", call.tagValue())
+                .start();
+    }
+
+    private static void stop(Call call, CallStats stats, Observation observation, long startedAt, Object result,
+            Throwable failure) {
+        var elapsed = System.nanoTime() - startedAt;
+        var status = result instanceof HttpResponse<?> response ? response.statusCode() : 0;
+        var error = failure != null || status >= 400;
+        if (failure != null) {
+            observation.error(failure);
+        }
+        observation.lowCardinalityKeyValue("outcome", error ? "ERROR" : "SUCCESS");
+        observation.lowCardinalityKeyValue("status", status == 0 ? "NONE" : String.valueOf(status));
+        observation.stop();
+        if (stats != null) {
+            stats.record(call, elapsed, error);
+        }
+    }
+
+    public enum Call {
+        PROJECT_SEARCH,
+        ISSUES_SEARCH,
+        FIX_AVAILABILITY,
+        AI_SUGGESTION,
+        SOURCE,
+        SONARLINT_FIX;
+
+        String tagValue() {
+            return name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+
+        /**
+         * The name of the call as shown to users.
+         */
+        public String label() {
+            return name().toLowerCase(Locale.ROOT).replace('_', ' ');
+        }
+    }
+
+    @FunctionalInterface
+    public interface ApiCall<T> {
+        T call() throws IOException, InterruptedException;
+    }
+}
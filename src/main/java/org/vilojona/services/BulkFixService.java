@@ -0,0 +1,92 @@
+package org.vilojona.services;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.sonarqube.ws.Issues.Issue;
+import org.springframework.stereotype.Service;
+
+/**
+ * Runs a whole bulk fix export: finds the issues matching a query that have an
+ * AI fix, then exports their fixes. Used by the views and by the headless
+ * command line mode alike, for a project or for all the projects of a server.
+ */
+@Service
+public class BulkFixService {
+
+    private final IssueScanService issueScanService;
+    private final PortfolioScanService portfolioScanService;
+    private final ExportService exportService;
+    private final LocalPatchService localPatchService;
+
+    public BulkFixService(IssueScanService issueScanService, PortfolioScanService portfolioScanService,
+            ExportService exportService, LocalPatchService localPatchService) {
+        this.issueScanService = issueScanService;
+        this.portfolioScanService = portfolioScanService;
+        this.exportService = exportService;
+        this.localPatchService = localPatchService;
+    }
+
+    /**
+     * Exports the AI fixes of the issues matching the query and returns how many
+     * were exported. An incremental export only rescans the issues changed since
+     * the last scan of the query.
+     */
+    public int exportFixes(SonarQubeConnection connection, IssueQuery query, boolean incremental, String fileName,
+            ExportOptions options, IssueScanService.ScanListener listener) throws IOException, InterruptedException {
+        var issuesWithAIFix = issueScanService.scan(connection, query, incremental, listener);
+        return exportService.exportIssuesWithCodeFix(connection, issuesWithAIFix, fileName, options);
+    }
+
+    /**
+     * Exports the AI fixes of the issues of all the projects matching the
+     * severity and folder to one set of files, along with a summary of each
+     * project, and returns how many were exported.
+     */
+    public int exportPortfolioFixes(SonarQubeConnection connection,
+            String severity, String folder, boolean incremental, String fileName, ExportOptions options,
+            PortfolioScanService.PortfolioListener listener) throws IOException, InterruptedException {
+        var projects = new LinkedHashMap<String, PortfolioScanService.ProjectScan>();
+        var issuesWithAIFix = portfolioScanService.scan(connection, severity, folder, incremental, new CallStats(),
+                new PortfolioScanService.PortfolioListener() {
+                    @Override
+                    public void onProjects(List<PortfolioScanService.ProjectScan> listed) {
+                        listed.forEach(project -> projects.put(project.project(), project));
+                        listener.onProjects(listed);
+                    }
+
+                    @Override
+                    public void onProgress(PortfolioScanService.ProjectScan project, ScanProgress portfolioProgress,
+                            List<Issue> newIssuesWithAIFix) {
+                        projects.put(project.project(), project);
+                        listener.onProgress(project, portfolioProgress, newIssuesWithAIFix);
+                    }
+                });
+        exportService.exportPortfolioSummary(List.copyOf(projects.values()), fileName, options);
+        return exportService.exportIssuesWithCodeFix(connection, issuesWithAIFix, fileName, options);
+    }
+
+    /**
+     * Applies the AI fixes of the issues matching the query to the files of a
+     * local checkout of the project.
+     */
+    public LocalApplyResult applyFixes(SonarQubeConnection connection, IssueQuery query, boolean incremental,
+            Path checkoutRoot, IssueScanService.ScanListener listener) throws IOException, InterruptedException {
+        var issuesWithAIFix = issueScanService.scan(connection, query, incremental, listener);
+        return localPatchService.applyFixes(connection, checkoutRoot, issuesWithAIFix);
+    }
+
+    /**
+     * Name, without extension, of the files the fixes of the issues matching the
+     * query are exported to.
+     */
+    public static String getOutputFileName(String prefix, IssueQuery query, String branch) {
+        String fileName = prefix + query.project();
+        fileName += (query.severity() != null) ? "-" + query.severity() : "";
+        fileName += (query.folder() == null || query.folder().isEmpty()) ? "" : "-" + query.folder();
+        fileName += (branch == null || branch.isEmpty()) ? "" : "-" + branch;
+        return fileName;
+    }
+}
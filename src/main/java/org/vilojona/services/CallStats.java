@@ -0,0 +1,87 @@
+package org.vilojona.services;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * The calls made to SonarQube for one scan, and the time they took, by kind
+ * of call. The time of calls made in parallel adds up, so it can exceed the
+ * time the scan took.
+ */
+public final class CallStats {
+
+    private static final ApiMetrics.Call[] CALLS = ApiMetrics.Call.values();
+
+    private final long startedAt = System.nanoTime();
+    private final LongAdder[] counts = adders();
+    private final LongAdder[] errors = adders();
+    private final LongAdder[] nanos = adders();
+    private final AtomicLong[] maxNanos = Arrays.stream(CALLS).map(call -> new AtomicLong())
+            .toArray(AtomicLong[]::new);
+
+    void record(ApiMetrics.Call call, long elapsedNanos, boolean error) {
+        var index = call.ordinal();
+        counts[index].increment();
+        nanos[index].add(elapsedNanos);
+        maxNanos[index].accumulateAndGet(elapsedNanos, Math::max);
+        if (error) {
+            errors[index].increment();
+        }
+    }
+
+    /**
+     * The time since the stats were created.
+     */
+    public Duration elapsed() {
+        return Duration.ofNanos(System.nanoTime() - startedAt);
+    }
+
+    /**
+     * The timing of every kind of call made so far.
+     */
+    public List<Timing> timings() {
+        return Arrays.stream(CALLS)
+                .filter(call -> counts[call.ordinal()].sum() > 0)
+                .map(call -> new Timing(call, counts[call.ordinal()].sum(), errors[call.ordinal()].sum(),
+                        Duration.ofNanos(nanos[call.ordinal()].sum()),
+                        Duration.ofNanos(maxNanos[call.ordinal()].get())))
+                .toList();
+    }
+
+    /**
+     * A one line breakdown of the time spent, for logs and status lines.
+     */
+    public String summary() {
+        var timings = timings();
+        return "took " + millis(elapsed()) + (timings.isEmpty() ? "" : timings.stream()
+                .map(timing -> timing.call().label() + ": " + timing.calls() + " calls, " + timing.errors()
+                        + " errors, " + millis(timing.totalTime()) + " in total, " + millis(timing.averageTime())
+                        + " on average, " + millis(timing.maxTime()) + " at most")
+                .collect(Collectors.joining("; ", " - ", "")));
+    }
+
+    private static String millis(Duration duration) {
+        return duration.toMillis() + " ms";
+    }
+
+    private static LongAdder[] adders() {
+        return Arrays.stream(CALLS).map(call -> new LongAdder()).toArray(LongAdder[]::new);
+    }
+
+    public record Timing(
+        ApiMetrics.Call call,
+        long calls,
+        long errors,
+        Duration totalTime,
+        Duration maxTime
+    ) {
+
+        public Duration averageTime() {
+            return calls == 0 ? Duration.ZERO : totalTime.dividedBy(calls);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package org.vilojona.services;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.function.LongSupplier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the requests in flight to one endpoint of a SonarQube server, and
+ * stops sending any while the server is overloaded.
+ *
+ * The limit adapts AIMD-style: every successful request raises it by
+ * {@code 1 / limit}, about one more request per round of requests, as long as
+ * the latency, averaged over the last few dozens of responses, stays within
+ * {@code latency-tolerance} times the lowest average seen lately. A higher
+ * average lowers it by a tenth, and a 429, a 5xx or an I/O error halves it.
+ * Averaging keeps single slow responses, as when the latency of an endpoint
+ * varies from one request to another whatever the load, from lowering it.
+ * Only requests started after the last decrease can lower it again, so that
+ * a burst of errors of the requests already in flight counts once.
+ *
+ * A 429 or 503 response pauses all the requests for as long as its
+ * {@code Retry-After} asks. After {@code failure-threshold} failed requests in
+ * a row the circuit opens, no request being sent for {@code open-duration},
+ * then a single trial request closes it again, or opens it for another round.
+ * Requests wait for the endpoint to take them for at most {@code max-wait},
+ * then fail.
+ */
+final class EndpointThrottle {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EndpointThrottle.class);
+    private static final double LATENCY_WEIGHT = 0.05;
+    private static final long BASELINE_WINDOW = TimeUnit.SECONDS.toNanos(30);
+    private static final double LATENCY_DECREASE = 0.9;
+    private static final double FAILURE_DECREASE = 0.5;
+
+    private final String name;
+    private final ServerThrottles.Settings settings;
+    private final LongSupplier nanoTime;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private double limit;
+    private int inFlight;
+    private long pausedUntil;
+    private Circuit circuit = Circuit.CLOSED;
+    private int consecutiveFailures;
+    private boolean trialInFlight;
+    private long lastUsedAt;
+    private long lastDecrease;
+    private long latencies;
+    private double averageLatency;
+    private long windowStart;
+    private double windowMinLatency = Double.MAX_VALUE;
+    private double previousWindowMinLatency = Double.MAX_VALUE;
+
+    EndpointThrottle(String name, ServerThrottles.Settings settings) {
+        this(name, settings, System::nanoTime);
+    }
+
+    EndpointThrottle(String name, ServerThrottles.Settings settings, LongSupplier nanoTime) {
+        this.name = name;
+        this.settings = settings;
+        this.nanoTime = nanoTime;
+        this.limit = settings.initialLimit();
+        var now = nanoTime.getAsLong();
+        this.pausedUntil = now;
+        this.lastUsedAt = now;
+        this.lastDecrease = now;
+        this.windowStart = now;
+    }
+
+    /**
+     * Waits for the endpoint to take one more request.
+     *
+     * @throws IOException when it has not for {@code max-wait}
+     */
+    Permit acquire() throws IOException, InterruptedException {
+        var deadline = nanoTime.getAsLong() + settings.maxWait().toNanos();
+        lock.lock();
+        try {
+            while (true) {
+                var now = nanoTime.getAsLong();
+                if (circuit == Circuit.OPEN && now - pausedUntil >= 0) {
+                    circuit = Circuit.HALF_OPEN;
+                }
+                if (now - pausedUntil >= 0 && switch (circuit) {
+                    case CLOSED -> inFlight < (int) limit;
+                    case HALF_OPEN -> !trialInFlight;
+                    case OPEN -> false;
+                }) {
+                    inFlight++;
+                    var trial = circuit == Circuit.HALF_OPEN;
+                    trialInFlight |= trial;
+                    return new Permit(now, trial);
+                }
+                var wait = deadline - now;
+                if (wait <= 0) {
+                    throw new IOException("SonarQube " + name + " is overloaded, gave up waiting after "
+                            + settings.maxWait());
+                }
+                changed.awaitNanos(now - pausedUntil < 0 ? Math.min(wait, pausedUntil - now) : wait);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records how the request of the permit went, {@code retryAfter} being
+     * the value of the {@code Retry-After} header of the response, if any.
+     */
+    void release(Permit permit, Outcome outcome, String retryAfter) {
+        var now = nanoTime.getAsLong();
+        lock.lock();
+        try {
+            inFlight--;
+            lastUsedAt = now;
+            if (permit.trial()) {
+                trialInFlight = false;
+            }
+            switch (outcome) {
+                case SUCCESS -> succeeded(permit, now);
+                case OVERLOADED, FAILED -> failed(permit, outcome, retryAfter, now);
+                case CANCELLED -> {
+                }
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Tells whether no request has gone through since the given
+     * {@link System#nanoTime()}, none being in flight or waiting, and the
+     * server is neither paused nor its circuit open.
+     */
+    boolean isIdleSince(long since) {
+        lock.lock();
+        try {
+            return inFlight == 0 && !lock.hasWaiters(changed) && lastUsedAt - since < 0
+                    && circuit == Circuit.CLOSED && nanoTime.getAsLong() - pausedUntil >= 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    ServerThrottles.ThrottleStats stats(String server) {
+        lock.lock();
+        try {
+            return new ServerThrottles.ThrottleStats(server, name, (int) limit, inFlight, circuit.name());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void succeeded(Permit permit, long now) {
+        consecutiveFailures = 0;
+        if (permit.trial()) {
+            circuit = Circuit.CLOSED;
+            LOGGER.info("SonarQube {} answers again, resuming with {} requests in flight", name, (int) limit);
+        }
+
+        if (slowedDown(now - permit.startedAt(), now)) {
+            decrease(permit, LATENCY_DECREASE, now);
+        } else {
+            limit = Math.min(settings.maxLimit(), limit + 1 / limit);
+        }
+    }
+
+    /**
+     * Averages the latency, plainly until there are enough latencies for the
+     * moving average, and tells whether the average is above the tolerance.
+     */
+    private boolean slowedDown(long latency, long now) {
+        latencies++;
+        averageLatency += Math.max(LATENCY_WEIGHT, 1.0 / latencies) * (latency - averageLatency);
+        if (latencies < 1 / LATENCY_WEIGHT) {
+            return false;
+        }
+        if (now - windowStart > BASELINE_WINDOW) {
+            previousWindowMinLatency = windowMinLatency;
+            windowMinLatency = averageLatency;
+            windowStart = now;
+        } else {
+            windowMinLatency = Math.min(windowMinLatency, averageLatency);
+        }
+        return averageLatency > Math.min(windowMinLatency, previousWindowMinLatency) * settings.latencyTolerance();
+    }
+
+    private void failed(Permit permit, Outcome outcome, String retryAfter, long now) {
+        decrease(permit, FAILURE_DECREASE, now);
+        if (outcome == Outcome.OVERLOADED) {
+            var pause = parseRetryAfter(retryAfter);
+            if (pause.isPositive()) {
+                LOGGER.info("SonarQube {} is overloaded, pausing for {}", name, pause);
+                pauseUntil(now + pause.toNanos());
+            }
+        }
+        consecutiveFailures++;
+        if (permit.trial() || (circuit == Circuit.CLOSED && consecutiveFailures >= settings.failureThreshold())) {
+            circuit = Circuit.OPEN;
+            pauseUntil(now + settings.openDuration().toNanos());
+            LOGGER.warn("SonarQube {} failed {} times in a row, not calling it for {}", name, consecutiveFailures,
+                    settings.openDuration());
+        }
+    }
+
+    private void pauseUntil(long until) {
+        if (until - pausedUntil > 0) {
+            pausedUntil = until;
+        }
+    }
+
+    private void decrease(Permit permit, double factor, long now) {
+        if (permit.startedAt() - lastDecrease > 0) {
+            limit = Math.max(settings.minLimit(), limit * factor);
+            lastDecrease = now;
+            LOGGER.debug("SonarQube {} slowed down, {} requests in flight at most", name, (int) limit);
+        }
+    }
+
+    /**
+     * Parses a {@code Retry-After} header, either a number of seconds or an
+     * HTTP date, as a pause from now.
+     */
+    static Duration parseRetryAfter(String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return Duration.ZERO;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                var until = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Duration.between(ZonedDateTime.now(until.getZone()), until);
+            } catch (DateTimeParseException notADate) {
+                return Duration.ZERO;
+            }
+        }
+    }
+
+    /**
+     * How a request went: whether the server answered, whatever the answer, was
+     * too busy to, or failed, or whether the request was given up, which tells
+     * nothing about the server.
+     */
+    enum Outcome {
+        SUCCESS,
+        OVERLOADED,
+        FAILED,
+        CANCELLED;
+
+        static Outcome of(int statusCode) {
+            if (statusCode == 429 || statusCode == 503) {
+                return OVERLOADED;
+            }
+            return statusCode >= 500 ? FAILED : SUCCESS;
+        }
+    }
+
+    record Permit(
+        long startedAt,
+        boolean trial
+    ) {
+    }
+
+    private enum Circuit {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+}
@@ -0,0 +1,30 @@
+package org.vilojona.services;
+
+/**
+ * How the exported fixes are written: as one JSON array or as one JSON object
+ * per line (NDJSON), whether they are also written as git patches, and
+ * whether the files are gzipped.
+ */
+public record ExportOptions(
+    JsonFormat jsonFormat,
+    boolean mbox,
+    boolean gzip
+) {
+
+    public static final ExportOptions DEFAULT = new ExportOptions(JsonFormat.JSON, false, false);
+
+    public enum JsonFormat {
+        JSON(".json"),
+        NDJSON(".ndjson");
+
+        private final String extension;
+
+        JsonFormat(String extension) {
+            this.extension = extension;
+        }
+
+        public String extension() {
+            return extension;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.vilojona.services;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonarqube.ws.Issues.Issue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Exports the AI fixes of a list of issues to JSON and CSV files, and
+ * optionally to an mbox of git patches, see {@link FilePatch}.
+ *
+ * Fixes are generated by a bounded pool of workers, while a single writer
+ * takes them in the order of the issues. The writer only waits for the oldest
+ * fix not written yet, and at most {@code reorder-window} fixes are held in
+ * memory waiting for it, so the output is always in the same order whatever
+ * order the fixes complete in.
+ */
+@Service
+public class ExportService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExportService.class);
+
+    private final AISuggestionService aiSuggestionService;
+    private final SourceService sourceService;
+    private final ObjectMapper objectMapper;
+    private final String patchAuthor;
+    private final int workers;
+    private final int reorderWindow;
+
+    public ExportService(AISuggestionService aiSuggestionService, SourceService sourceService,
+            ObjectMapper objectMapper,
+            @Value("${bulkfix.export.workers:8}") int workers,
+            @Value("${bulkfix.export.reorder-window:64}") int reorderWindow,
+            @Value("${bulkfix.export.patch-author:SonarQube Bulk Fix <bulk-fix@localhost>}") String patchAuthor) {
+        this.aiSuggestionService = aiSuggestionService;
+        this.sourceService = sourceService;
+        this.objectMapper = objectMapper;
+        this.patchAuthor = patchAuthor;
+        this.workers = workers;
+        this.reorderWindow = Math.max(reorderWindow, workers);
+    }
+
+    /**
+     * Exports the AI fixes of the issues, in {@link IssueScanService#ISSUE_ORDER},
+     * and returns how many were exported.
+     */
+    public int exportIssuesWithCodeFix(SonarQubeConnection connection, List<Issue> issues, String fileName,
+            ExportOptions options) throws IOException, InterruptedException {
+        return exportIssuesWithCodeFix(connection, issues, fileName, options, (written, total) -> {
+        });
+    }
+
+    /**
+     * Exports the AI fixes of the issues, telling the listener every time the
+     * fix of an issue has been written, and returns how many were exported.
+     */
+    public int exportIssuesWithCodeFix(SonarQubeConnection connection, List<Issue> issues, String fileName,
+            ExportOptions options, ExportListener listener) throws IOException, InterruptedException {
+        var sortedIssues = issues.stream().sorted(IssueScanService.ISSUE_ORDER).toList();
+        try (var writer = new FixExportWriter(connection, objectMapper, fileName, options);
+                var mboxWriter = options.mbox()
+                        ? new MboxWriter(connection, sourceService, fileName, patchAuthor, options)
+                        : null) {
+            fetchAiSuggestionsInOrder(connection, sortedIssues, (issue, issueCodeFix) -> {
+                writer.write(issue, issueCodeFix);
+                if (mboxWriter != null) {
+                    mboxWriter.write(issue, issueCodeFix);
+                }
+                listener.onFixWritten(writer.written(), sortedIssues.size());
+            });
+            return writer.written();
+        }
+    }
+
+    /**
+     * Writes, next to the fixes of a portfolio export, how many issues of each
+     * project were scanned and have an AI fix, and which projects could not be
+     * scanned.
+     */
+    public void exportPortfolioSummary(List<PortfolioScanService.ProjectScan> projects, String fileName,
+            ExportOptions options) throws IOException {
+        var suffix = options.gzip() ? ".gz" : "";
+        try (var csvWriter = new CsvWriter(new OutputStreamWriter(
+                FixExportWriter.open(Path.of(fileName + "-projects.csv" + suffix), options), StandardCharsets.UTF_8))) {
+            csvWriter.writeRecord("Project", "Status", "Issues", "Matching", "WithAIFix", "Failure");
+            for (var project : projects) {
+                var progress = project.progress();
+                csvWriter.writeRecord(project.project(), project.status().name(), String.valueOf(progress.total()),
+                        String.valueOf(progress.matching()), String.valueOf(progress.withAIFix()), project.failure());
+            }
+        }
+    }
+
+    /**
+     * Fetches the AI fixes of the issues in parallel and hands them to the
+     * writer, on the calling thread, in the order of the issues. Issues that
+     * would get the same fix share the one generated for the first of them, see
+     * {@link FixTemplates}. Issues whose fix cannot be fetched are logged and
+     * skipped.
+     */
+    public void fetchAiSuggestionsInOrder(SonarQubeConnection connection, List<Issue> issues, FixWriter writer)
+            throws IOException, InterruptedException {
+        var executor = Executors.newVirtualThreadPerTaskExecutor();
+        var fixTemplates = aiSuggestionService.newFixTemplates(connection, workers);
+        var window = new ArrayDeque<PendingFix>();
+        try {
+            for (var issue : issues) {
+                if (window.size() == reorderWindow) {
+                    writeOldest(window, writer);
+                }
+                window.add(new PendingFix(issue, executor.submit(() -> fixTemplates.fetch(issue))));
+            }
+            while (!window.isEmpty()) {
+                writeOldest(window, writer);
+            }
+            if (fixTemplates.reused() > 0) {
+                LOGGER.info("Reused {} AI fixes of {} issues from issues with the same rule and code",
+                        fixTemplates.reused(), issues.size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void writeOldest(ArrayDeque<PendingFix> window, FixWriter writer)
+            throws IOException, InterruptedException {
+        var oldest = window.poll();
+        try {
+            writer.write(oldest.issue(), oldest.fix().get());
+        } catch (ExecutionException e) {
+            LOGGER.warn("Could not fetch the AI fix for issue {}", oldest.issue().getKey(), e.getCause());
+        }
+    }
+
+    @FunctionalInterface
+    public interface FixWriter {
+        void write(Issue issue, IssueAndFix issueCodeFix) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface ExportListener {
+        void onFixWritten(int written, int total);
+    }
+
+    private record PendingFix(Issue issue, Future<IssueAndFix> fix) {
+    }
+}
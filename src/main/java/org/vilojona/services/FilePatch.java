@@ -0,0 +1,243 @@
+package org.vilojona.services;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * The AI fixes of one file, merged into a single unified diff against its
+ * source, or applied to it.
+ *
+ * Fixes are added one by one. A fix whose changes overlap those of a fix
+ * already added, or fall outside of the file, is refused as a whole, so the
+ * diff always applies cleanly to the source it was made from. Changes close
+ * to each other share a hunk, with {@value #CONTEXT_LINES} lines of context
+ * around them. A change whose end line is the line before its start line
+ * inserts its code before its start line, replacing no line.
+ */
+public final class FilePatch {
+
+    static final int CONTEXT_LINES = 3;
+    private static final String NO_NEWLINE_AT_END = "\\ No newline at end of file\n";
+
+    private final String path;
+    private final SourceFile source;
+    private final int lastLine;
+    private final boolean newlineAtEnd;
+    private final TreeMap<Integer, AISuggestion.Change> changesByStartLine = new TreeMap<>();
+    private final List<AISuggestion> fixes = new ArrayList<>();
+
+    public FilePatch(String path, SourceFile source) {
+        this.path = path;
+        this.source = source;
+        var text = source.text();
+        this.newlineAtEnd = text.isEmpty() || text.endsWith("\n");
+        this.lastLine = text.isEmpty() ? 0 : newlineAtEnd ? source.lineCount() - 1 : source.lineCount();
+    }
+
+    public String path() {
+        return path;
+    }
+
+    /**
+     * The fixes added so far.
+     */
+    public List<AISuggestion> fixes() {
+        return fixes;
+    }
+
+    public boolean isEmpty() {
+        return fixes.isEmpty();
+    }
+
+    /**
+     * Adds the changes of the fix, unless one of them overlaps a change already
+     * added, falls outside of the file or inserts nothing. Returns whether the
+     * fix was added.
+     */
+    public boolean add(AISuggestion fix) {
+        var changes = fix.changes().stream().sorted(Comparator.comparingInt(AISuggestion.Change::startLine))
+                .map(this::withLastLine).toList();
+        if (changes.isEmpty()) {
+            return false;
+        }
+        var previousStart = 0;
+        var previousEnd = 0;
+        for (var change : changes) {
+            if (change.startLine() <= previousEnd || change.startLine() == previousStart || change.startLine() < 1
+                    || change.endLine() < change.startLine() - 1 || change.endLine() > lastLine
+                    || (isInsertion(change) && newLines(change).isEmpty()) || overlapsAddedChange(change)) {
+                return false;
+            }
+            previousStart = change.startLine();
+            previousEnd = change.endLine();
+        }
+        changes.forEach(change -> changesByStartLine.put(change.startLine(), change));
+        fixes.add(fix);
+        return true;
+    }
+
+    /**
+     * An insertion at the end of a file without a newline at the end, as the
+     * replacement of its last line, which gets the line ending of the line
+     * before it.
+     */
+    private AISuggestion.Change withLastLine(AISuggestion.Change change) {
+        if (newlineAtEnd || !isInsertion(change) || change.startLine() != lastLine + 1 || change.newCode() == null
+                || change.newCode().isEmpty()) {
+            return change;
+        }
+        var lineEnding = lastLine > 1 && source.lines(lastLine - 1, lastLine - 1).endsWith("\r") ? "\r\n" : "\n";
+        var lines = (source.lines(lastLine, lastLine) + "\n" + change.newCode()).split("\r?\n", -1);
+        return new AISuggestion.Change(lastLine, lastLine, String.join(lineEnding, lines));
+    }
+
+    private boolean overlapsAddedChange(AISuggestion.Change change) {
+        if (changesByStartLine.containsKey(change.startLine())) {
+            return true;
+        }
+        var before = changesByStartLine.floorEntry(change.endLine());
+        return before != null && before.getValue().endLine() >= change.startLine();
+    }
+
+    private static boolean isInsertion(AISuggestion.Change change) {
+        return change.endLine() < change.startLine();
+    }
+
+    /**
+     * Writes the unified diff of all the fixes added, in the format of
+     * {@code git diff}. Writes nothing when no fix was added.
+     */
+    public void writeDiff(Appendable out) throws IOException {
+        if (changesByStartLine.isEmpty()) {
+            return;
+        }
+        out.append("diff --git a/").append(path).append(" b/").append(path).append('\n');
+        out.append("--- a/").append(path).append('\n');
+        out.append("+++ b/").append(path).append('\n');
+
+        var offset = 0;
+        for (var hunk : hunks()) {
+            offset = writeHunk(out, hunk, offset);
+        }
+    }
+
+    /**
+     * Returns the source with all the fixes added applied. Every change is
+     * located with the line index of the original source, so the line numbers
+     * of a change stay valid whatever the changes before it add or remove.
+     */
+    public String apply() {
+        var text = source.text();
+        var patched = new StringBuilder(text.length() + 256);
+        var copied = 0;
+        for (var change : changesByStartLine.values()) {
+            var start = source.lineStart(change.startLine());
+            var newLines = newLines(change);
+            if (isInsertion(change)) {
+                patched.append(text, copied, start).append(String.join("\n", newLines)).append('\n');
+                copied = start;
+                continue;
+            }
+            var end = source.lineEnd(change.endLine());
+            if (newLines.isEmpty() && end < text.length()) {
+                // the lines are removed along with their line break, the line before the last ones keeping its own
+                // as in the diff
+                end++;
+            }
+            patched.append(text, copied, start).append(String.join("\n", newLines));
+            copied = end;
+        }
+        return patched.append(text, copied, text.length()).toString();
+    }
+
+    /**
+     * Groups the changes whose context lines touch or overlap into hunks.
+     */
+    private List<List<AISuggestion.Change>> hunks() {
+        var hunks = new ArrayList<List<AISuggestion.Change>>();
+        List<AISuggestion.Change> hunk = null;
+        for (var change : changesByStartLine.values()) {
+            if (hunk == null || change.startLine() - CONTEXT_LINES > hunk.getLast().endLine() + CONTEXT_LINES + 1) {
+                hunk = new ArrayList<>();
+                hunks.add(hunk);
+            }
+            hunk.add(change);
+        }
+        return hunks;
+    }
+
+    /**
+     * Writes a hunk and returns the offset of the lines that follow it in the
+     * new file, relative to the old one.
+     */
+    private int writeHunk(Appendable out, List<AISuggestion.Change> hunk, int offset) throws IOException {
+        var oldStart = Math.max(1, hunk.getFirst().startLine() - CONTEXT_LINES);
+        var oldEnd = Math.min(lastLine, hunk.getLast().endLine() + CONTEXT_LINES);
+        var oldCount = oldEnd - oldStart + 1;
+        var newCount = oldCount;
+        var newLinesByChange = new ArrayList<List<String>>();
+        for (var change : hunk) {
+            var newLines = newLines(change);
+            newLinesByChange.add(newLines);
+            newCount += newLines.size() - (change.endLine() - change.startLine() + 1);
+        }
+        var newStart = oldStart + offset;
+
+        out.append("@@ -").append(range(oldStart, oldCount)).append(" +").append(range(newStart, newCount))
+                .append(" @@\n");
+        var line = oldStart;
+        for (var i = 0; i < hunk.size(); i++) {
+            var change = hunk.get(i);
+            for (; line < change.startLine(); line++) {
+                writeLine(out, ' ', source.lines(line, line), line == lastLine);
+            }
+            for (; line <= change.endLine(); line++) {
+                writeLine(out, '-', source.lines(line, line), line == lastLine);
+            }
+            var newLines = newLinesByChange.get(i);
+            for (var j = 0; j < newLines.size(); j++) {
+                writeLine(out, '+', newLines.get(j), change.endLine() == lastLine && j == newLines.size() - 1);
+            }
+        }
+        for (; line <= oldEnd; line++) {
+            writeLine(out, ' ', source.lines(line, line), line == lastLine);
+        }
+        return offset + newCount - oldCount;
+    }
+
+    /**
+     * The new lines of a change, with the line ending of the lines they
+     * replace.
+     */
+    private List<String> newLines(AISuggestion.Change change) {
+        var newCode = change.newCode();
+        if (newCode == null || newCode.isEmpty()) {
+            return List.of();
+        }
+        var lines = new ArrayList<>(List.of(newCode.split("\n", -1)));
+        if (newCode.endsWith("\n")) {
+            lines.removeLast();
+        }
+        // an insertion takes the line ending of the line after it, or before it at the end of the file
+        var endingLine = Math.min(change.startLine(), lastLine);
+        if (endingLine > 0 && source.lines(endingLine, endingLine).endsWith("\r")) {
+            lines.replaceAll(line -> line.endsWith("\r") ? line : line + "\r");
+        }
+        return lines;
+    }
+
+    private void writeLine(Appendable out, char prefix, String line, boolean isLastLineOfFile) throws IOException {
+        out.append(prefix).append(line).append('\n');
+        if (isLastLineOfFile && !newlineAtEnd) {
+            out.append(NO_NEWLINE_AT_END);
+        }
+    }
+
+    private static String range(int start, int count) {
+        // an empty range starts at the line before it
+        return count == 0 ? (start - 1) + ",0" : start + "," + count;
+    }
+}
@@ -0,0 +1,159 @@
+package org.vilojona.services;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonarqube.ws.Issues.Issue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Checks which issues have an AI fix available, probing
+ * {@code /api/v2/fix-suggestions/issues/{key}} concurrently.
+ *
+ * The number of probes in flight and the rate at which they are started
+ * against a host are bounded, on top of the adaptive limit of the server, see
+ * {@link EndpointThrottle}. A probe the server is too busy to answer is tried
+ * again, once it takes requests again. A probe that fails or times out counts
+ * as "no fix available" and never holds back the others.
+ */
+@Service
+public class FixAvailabilityService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FixAvailabilityService.class);
+    private static final String API_V2_FIX_SUGGESTIONS_ISSUES = "/api/v2/fix-suggestions/issues/";
+    private static final int MAX_PROBE_ATTEMPTS = 3;
+
+    private final SonarQubeClients clients;
+    private final int maxInFlight;
+    private final Duration probeTimeout;
+    private final HostRateLimiter rateLimiter;
+    private final ApiMetrics metrics;
+
+    public FixAvailabilityService(SonarQubeClients clients, ApiMetrics metrics,
+            @Value("${bulkfix.probe.max-in-flight:16}") int maxInFlight,
+            @Value("${bulkfix.probe.requests-per-second:50}") double requestsPerSecond,
+            @Value("${bulkfix.probe.timeout:30s}") Duration probeTimeout) {
+        this.clients = clients;
+        this.maxInFlight = maxInFlight;
+        this.probeTimeout = probeTimeout;
+        this.rateLimiter = new HostRateLimiter(requestsPerSecond);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Creates a prober whose in-flight limit is shared by every batch submitted
+     * to it, so that batches can overlap without exceeding the limit. Its
+     * probes are added up in the given stats.
+     */
+    public Prober newProber(SonarQubeConnection connection, CallStats stats) {
+        return new Prober(connection, stats, null);
+    }
+
+    /**
+     * Creates a prober whose probes also take a permit of a budget shared with
+     * other probers, like those of the projects of a portfolio scan. A fair
+     * budget hands permits out in turn to the probers waiting for one.
+     */
+    public Prober newProber(SonarQubeConnection connection, CallStats stats, Semaphore sharedBudget) {
+        return new Prober(connection, stats, sharedBudget);
+    }
+
+    public final class Prober {
+
+        private final SonarQubeConnection connection;
+        private final CallStats stats;
+        private final Semaphore inFlight = new Semaphore(maxInFlight);
+        private final Semaphore sharedBudget;
+
+        private Prober(SonarQubeConnection connection, CallStats stats, Semaphore sharedBudget) {
+            this.connection = connection;
+            this.stats = stats;
+            this.sharedBudget = sharedBudget;
+        }
+
+        /**
+         * Starts probing the given issues, blocking only while the in-flight limit
+         * is reached. The returned future completes with the issues that have an
+         * AI fix available, in the same order as they were given.
+         */
+        public CompletableFuture<List<Issue>> submit(List<Issue> issues) throws InterruptedException {
+            var probes = new ArrayList<CompletableFuture<Boolean>>(issues.size());
+            try {
+                for (var issue : issues) {
+                    acquire();
+                    rateLimiter.acquire(connection.host());
+                    probes.add(hasAIFix(connection, issue, stats).whenComplete((available, e) -> release()));
+                }
+            } catch (InterruptedException e) {
+                probes.forEach(probe -> probe.cancel(true));
+                throw e;
+            }
+
+            return CompletableFuture.allOf(probes.toArray(CompletableFuture[]::new)).thenApply(done -> {
+                var issuesWithAIFix = new ArrayList<Issue>();
+                for (var i = 0; i < issues.size(); i++) {
+                    if (probes.get(i).join()) {
+                        issuesWithAIFix.add(issues.get(i));
+                    }
+                }
+                return issuesWithAIFix;
+            });
+        }
+
+        private void acquire() throws InterruptedException {
+            inFlight.acquire();
+            if (sharedBudget != null) {
+                try {
+                    sharedBudget.acquire();
+                } catch (InterruptedException e) {
+                    inFlight.release();
+                    throw e;
+                }
+            }
+        }
+
+        private void release() {
+            if (sharedBudget != null) {
+                sharedBudget.release();
+            }
+            inFlight.release();
+        }
+    }
+
+    private CompletableFuture<Boolean> hasAIFix(SonarQubeConnection connection, Issue issue, CallStats stats) {
+        var request = HttpRequest.newBuilder()
+                .uri(URI.create(connection.url() + API_V2_FIX_SUGGESTIONS_ISSUES + issue.getKey()))
+                .header("Authorization", connection.authorization())
+                .timeout(probeTimeout)
+                .build();
+        return probe(connection, request, stats, 1)
+                .exceptionally(e -> {
+                    LOGGER.warn("Could not check AI fix availability for issue {}", issue.getKey(), e);
+                    return false;
+                });
+    }
+
+    private CompletableFuture<Boolean> probe(SonarQubeConnection connection, HttpRequest request, CallStats stats,
+            int attempt) {
+        return metrics.observeAsync(ApiMetrics.Call.FIX_AVAILABILITY, stats,
+                () -> clients.sendAsync(connection, ApiMetrics.Call.FIX_AVAILABILITY, request, BodyHandlers.ofString()))
+                .thenCompose(response -> {
+                    if (EndpointThrottle.Outcome.of(response.statusCode()) == EndpointThrottle.Outcome.OVERLOADED
+                            && attempt < MAX_PROBE_ATTEMPTS) {
+                        metrics.retried(ApiMetrics.Call.FIX_AVAILABILITY);
+                        return probe(connection, request, stats, attempt + 1);
+                    }
+                    return CompletableFuture.completedFuture(response.statusCode() == 200
+                            && response.body().contains("\"aiSuggestion\":\"AVAILABLE\""));
+                });
+    }
+}
@@ -0,0 +1,80 @@
+package org.vilojona.services;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+import org.sonarqube.ws.Issues.Issue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+
+/**
+ * Streams exported fixes to a JSON (or NDJSON) file and a CSV file as they
+ * come, so that memory use does not depend on the number of fixes.
+ *
+ * Both files are written through buffered file channels, gzipped if asked to,
+ * and replace any previous export with the same name.
+ */
+class FixExportWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final SonarQubeConnection connection;
+    private final SequenceWriter jsonWriter;
+    private final CsvWriter csvWriter;
+    private int written;
+
+    FixExportWriter(SonarQubeConnection connection, ObjectMapper objectMapper, String fileName,
+            ExportOptions options) throws IOException {
+        this.connection = connection;
+        var suffix = options.gzip() ? ".gz" : "";
+        var json = open(Path.of(fileName + "-exported" + options.jsonFormat().extension() + suffix), options);
+        try {
+            this.jsonWriter = switch (options.jsonFormat()) {
+                case JSON -> objectMapper.writer().writeValuesAsArray(json);
+                case NDJSON -> objectMapper.writer().withRootValueSeparator("\n").writeValues(json);
+            };
+            this.csvWriter = new CsvWriter(new OutputStreamWriter(
+                    open(Path.of(fileName + "-exported.csv" + suffix), options), StandardCharsets.UTF_8));
+        } catch (IOException | RuntimeException e) {
+            json.close();
+            throw e;
+        }
+        csvWriter.writeRecord("Rule", "Severity", "File", "IssueId", "Explanation");
+    }
+
+    void write(Issue issue, IssueAndFix issueCodeFix) throws IOException {
+        jsonWriter.write(issueCodeFix);
+        csvWriter.writeRecord(issue.getRule(), issue.getSeverity().toString(), issue.getComponent(),
+                connection.issueLink(issue.getProject(), issueCodeFix.fix().issueId()),
+                issueCodeFix.fix().explanation());
+        written++;
+    }
+
+    int written() {
+        return written;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (csvWriter) {
+            jsonWriter.close();
+        }
+    }
+
+    static OutputStream open(Path path, ExportOptions options) throws IOException {
+        var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        var out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+        return options.gzip() ? new GZIPOutputStream(out, BUFFER_SIZE) : out;
+    }
+}
@@ -0,0 +1,240 @@
+package org.vilojona.services;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sonarqube.ws.Issues.Issue;
+
+/**
+ * Fetches the AI fixes of a batch of issues, asking SonarQube only once for
+ * the issues that would get the same fix.
+ *
+ * Issues are grouped by their rule, their message and the code of their
+ * lines, whitespace aside. The first issue of a group asks for its fix, and
+ * the others of the group wait for it and reuse it as a template: each change
+ * is moved to the same lines relative to the issue, and the fix is reused only
+ * if the lines all its changes replace, or for an insertion the lines around
+ * it, are the same there, indentation aside, the new code being indented like
+ * them. Otherwise, or when the first issue got no fix, an issue asks for its
+ * own fix. Issues without a message or a text range always ask for their own.
+ *
+ * At most {@code maxInFlight} fixes are generated at once, issues waiting for
+ * the fix of their group not counting.
+ */
+final class FixTemplates {
+
+    private final AISuggestionService aiSuggestionService;
+    private final SourceService sourceService;
+    private final AISuggestionCache cache;
+    private final SonarQubeConnection connection;
+    private final boolean reuse;
+    private final Semaphore inFlight;
+    private final ConcurrentHashMap<String, CompletableFuture<Template>> templates = new ConcurrentHashMap<>();
+    private final AtomicInteger reused = new AtomicInteger();
+
+    FixTemplates(AISuggestionService aiSuggestionService, SourceService sourceService, AISuggestionCache cache,
+            SonarQubeConnection connection, boolean reuse, int maxInFlight) {
+        this.aiSuggestionService = aiSuggestionService;
+        this.sourceService = sourceService;
+        this.cache = cache;
+        this.connection = connection;
+        this.reuse = reuse;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    IssueAndFix fetch(Issue issue) throws IOException, InterruptedException {
+        SourceFile sourceFile;
+        inFlight.acquire();
+        try {
+            sourceFile = sourceService.getSourceFile(connection, issue.getComponent());
+            var cached = cache.get(issue.getKey(), sourceFile.hash());
+            if (cached.isPresent()) {
+                return new IssueAndFix(issue.getComponent(), issue.getRule(), cached.get());
+            }
+        } finally {
+            inFlight.release();
+        }
+
+        var context = reuse ? Context.of(issue, sourceFile) : null;
+        if (context == null) {
+            return generate(issue, sourceFile);
+        }
+        var template = new CompletableFuture<Template>();
+        var first = templates.putIfAbsent(context.fingerprint(), template);
+        if (first == null) {
+            try {
+                var issueAndFix = generate(issue, sourceFile);
+                template.complete(Template.of(context, sourceFile, issueAndFix.fix()));
+                return issueAndFix;
+            } finally {
+                // the others of the group ask for their own fix
+                template.complete(null);
+            }
+        }
+
+        var fix = applyTemplate(first, issue, context, sourceFile);
+        if (fix == null) {
+            return generate(issue, sourceFile);
+        }
+        reused.incrementAndGet();
+        cache.put(issue.getKey(), sourceFile.hash(), fix);
+        return new IssueAndFix(issue.getComponent(), issue.getRule(), fix);
+    }
+
+    /**
+     * How many fixes were reused from another issue of their group so far.
+     */
+    int reused() {
+        return reused.get();
+    }
+
+    private IssueAndFix generate(Issue issue, SourceFile sourceFile) throws IOException, InterruptedException {
+        inFlight.acquire();
+        try {
+            return aiSuggestionService.generate(connection, issue, sourceFile.hash());
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    private static AISuggestion applyTemplate(CompletableFuture<Template> first, Issue issue, Context context,
+            SourceFile sourceFile) throws InterruptedException {
+        try {
+            var template = first.get();
+            return template == null ? null : template.applyTo(issue, context, sourceFile);
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The lines of an issue, and the fingerprint of the issues that would get
+     * the same fix.
+     */
+    private record Context(
+        int startLine,
+        int endLine,
+        String fingerprint
+    ) {
+
+        static Context of(Issue issue, SourceFile sourceFile) {
+            if (issue.getMessage().isEmpty() || !issue.hasTextRange()) {
+                // nothing to tell apart the issues of a rule on the same code
+                return null;
+            }
+            var startLine = issue.getTextRange().getStartLine();
+            var endLine = issue.getTextRange().getEndLine();
+            if (startLine < 1 || endLine < startLine || endLine > sourceFile.lineCount()) {
+                // issues on a whole file depend on more than their lines
+                return null;
+            }
+            var fingerprint = new StringBuilder(issue.getRule()).append('\n').append(issue.getMessage());
+            for (var line = startLine; line <= endLine; line++) {
+                fingerprint.append('\n').append(sourceFile.lines(line, line).strip().replaceAll("\\s+", " "));
+            }
+            return new Context(startLine, endLine, fingerprint.toString());
+        }
+    }
+
+    /**
+     * A fix with its changes relative to the first line of its issue, along
+     * with the lines they replace, or for insertions the lines around them.
+     */
+    private record Template(
+        AISuggestion fix,
+        List<ChangeTemplate> changes
+    ) {
+
+        static Template of(Context context, SourceFile sourceFile, AISuggestion fix) {
+            var changes = new ArrayList<ChangeTemplate>(fix.changes().size());
+            for (var change : fix.changes()) {
+                if (change.startLine() < 1 || change.endLine() < change.startLine() - 1
+                        || change.endLine() > sourceFile.lineCount()) {
+                    return null;
+                }
+                var before = linesAround(sourceFile, change.startLine(), change.endLine());
+                changes.add(new ChangeTemplate(change.startLine() - context.startLine(),
+                        change.endLine() - change.startLine(), before, change.newCode()));
+            }
+            return new Template(fix, changes);
+        }
+
+        /**
+         * Returns the fix for the issue, or null when it does not apply to it.
+         */
+        AISuggestion applyTo(Issue issue, Context context, SourceFile sourceFile) {
+            var changes = new ArrayList<AISuggestion.Change>(this.changes.size());
+            for (var change : this.changes) {
+                var startLine = context.startLine() + change.offset();
+                var endLine = startLine + change.extent();
+                if (startLine < 1 || endLine > sourceFile.lineCount()) {
+                    return null;
+                }
+                var before = linesAround(sourceFile, startLine, endLine);
+                if (before.size() != change.before().size()) {
+                    return null;
+                }
+                for (var i = 0; i < before.size(); i++) {
+                    if (!before.get(i).strip().equals(change.before().get(i).strip())) {
+                        return null;
+                    }
+                }
+                var insertion = change.extent() < 0;
+                changes.add(new AISuggestion.Change(startLine, endLine, reindent(change.newCode(),
+                        indent(change.before(), insertion), indent(before, insertion))));
+            }
+            return new AISuggestion(fix.id(), issue.getKey(), fix.explanation(), changes);
+        }
+
+        /**
+         * The lines a change replaces or, for an insertion, the lines before
+         * and after it, those of them that there are.
+         */
+        private static List<String> linesAround(SourceFile sourceFile, int startLine, int endLine) {
+            if (endLine < startLine) {
+                startLine = Math.max(1, startLine - 1);
+                endLine = Math.min(sourceFile.lineCount(), endLine + 1);
+            }
+            return List.of(sourceFile.lines(startLine, endLine).split("\n", -1));
+        }
+
+        /**
+         * The indentation of the first line a change replaces or, for an
+         * insertion, of the line after it, or before it at the end of the file.
+         */
+        private static String indent(List<String> lines, boolean insertion) {
+            if (lines.isEmpty()) {
+                return "";
+            }
+            var line = insertion ? lines.getLast() : lines.getFirst();
+            return line.substring(0, line.length() - line.stripLeading().length());
+        }
+
+        private static String reindent(String code, String from, String to) {
+            if (from.equals(to)) {
+                return code;
+            }
+            var lines = code.split("\n", -1);
+            for (var i = 0; i < lines.length; i++) {
+                if (lines[i].startsWith(from)) {
+                    lines[i] = to + lines[i].substring(from.length());
+                }
+            }
+            return String.join("\n", lines);
+        }
+    }
+
+    private record ChangeTemplate(
+        int offset,
+        int extent,
+        List<String> before,
+        String newCode
+    ) {
+    }
+}
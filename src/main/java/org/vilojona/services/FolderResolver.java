@@ -0,0 +1,107 @@
+package org.vilojona.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonarqube.ws.Components.Component;
+import org.sonarqube.ws.client.components.TreeRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Turns the folder of a query into slices that SonarQube can search on its
+ * own, so that only the issues under the folder are downloaded.
+ *
+ * The folder is a prefix of the file paths, as in the client side filter: it
+ * matches every directory whose path starts with it, plus the files of its
+ * parent directory whose path starts with it. Those are looked up with the
+ * components tree API and searched with the {@code directories} and
+ * {@code componentKeys} parameters, in batches small enough for a request URL.
+ * A folder that does not exist has no slice, there being no issue under it.
+ * When the folder cannot be resolved, the whole project is searched and the
+ * issues are filtered on the client side.
+ */
+@Service
+public class FolderResolver {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FolderResolver.class);
+    private static final String TREE_PAGE_SIZE = "500";
+    private static final int MIN_SEARCH_LENGTH = 3;
+
+    private final SonarQubeClients clients;
+    private final int batchSize;
+
+    public FolderResolver(SonarQubeClients clients,
+            @Value("${bulkfix.scan.component-batch-size:50}") int batchSize) {
+        this.clients = clients;
+        this.batchSize = batchSize;
+    }
+
+    public List<IssueSlice> resolveSlices(SonarQubeConnection connection, IssueQuery query) {
+        var folder = query.folder();
+        if (folder == null || folder.isEmpty()) {
+            return List.of(IssueSlice.ALL);
+        }
+        try {
+            var allDirectories = findComponents(connection, query.project(), "DIR", "all", "").stream()
+                    .map(Component::getPath)
+                    .toList();
+            var directories = allDirectories.stream().filter(path -> path.startsWith(folder)).toList();
+            var parentPath = folder.contains("/") ? folder.substring(0, folder.lastIndexOf('/')) : "";
+            var fileName = folder.substring(folder.lastIndexOf('/') + 1);
+            // a parent directory that does not exist has no files, and the tree would answer 404 for it
+            var files = !parentPath.isEmpty() && !allDirectories.contains(parentPath) ? List.<String>of()
+                    : findComponents(connection, parentPath.isEmpty() ? query.project()
+                            : query.project() + ":" + parentPath, "FIL", "children", fileName).stream()
+                            .filter(file -> file.getPath().startsWith(folder))
+                            .map(Component::getKey)
+                            .toList();
+            if (directories.isEmpty() && files.isEmpty()) {
+                LOGGER.info("Folder {} of {} not found, no issue to search", folder, query.project());
+                return List.of();
+            }
+
+            var slices = new ArrayList<IssueSlice>();
+            batches(directories).forEach(batch -> slices.add(IssueSlice.ofDirectories(batch)));
+            batches(files).forEach(batch -> slices.add(IssueSlice.ofComponentKeys(batch)));
+            return slices;
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not resolve folder {} of {}, filtering issues on the client side", folder,
+                    query.project(), e);
+            return List.of(IssueSlice.ALL);
+        }
+    }
+
+    private List<Component> findComponents(SonarQubeConnection connection, String component, String qualifier,
+            String strategy, String search) {
+        var wsClient = clients.wsClient(connection);
+        var components = new ArrayList<Component>();
+        var page = 1;
+        while (true) {
+            var treeRequest = new TreeRequest()
+                    .setComponent(component)
+                    .setQualifiers(List.of(qualifier))
+                    .setStrategy(strategy)
+                    .setP(String.valueOf(page++))
+                    .setPs(TREE_PAGE_SIZE);
+            if (search.length() >= MIN_SEARCH_LENGTH) {
+                treeRequest.setQ(search);
+            }
+            var response = wsClient.components().tree(treeRequest);
+            components.addAll(response.getComponentsList());
+            if (response.getComponentsCount() == 0 || components.size() >= response.getPaging().getTotal()) {
+                return components;
+            }
+        }
+    }
+
+    private List<List<String>> batches(List<String> keys) {
+        var batches = new ArrayList<List<String>>();
+        for (var i = 0; i < keys.size(); i += batchSize) {
+            batches.add(keys.subList(i, Math.min(i + batchSize, keys.size())));
+        }
+        return batches;
+    }
+}
@@ -0,0 +1,29 @@
+package org.vilojona.services;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spaces out requests to the same host so that no more than a given number of
+ * requests per second are started against it.
+ */
+class HostRateLimiter {
+
+    private final long intervalNanos;
+    private final ConcurrentHashMap<String, AtomicLong> nextSlotByHost = new ConcurrentHashMap<>();
+
+    HostRateLimiter(double requestsPerSecond) {
+        this.intervalNanos = requestsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond) : 0;
+    }
+
+    void acquire(String host) throws InterruptedException {
+        if (intervalNanos == 0) {
+            return;
+        }
+        var nextSlot = nextSlotByHost.computeIfAbsent(host, h -> new AtomicLong(System.nanoTime()));
+        var now = System.nanoTime();
+        var slot = Math.max(now, nextSlot.getAndUpdate(previous -> Math.max(previous, now) + intervalNanos));
+        TimeUnit.NANOSECONDS.sleep(slot - now);
+    }
+}
@@ -0,0 +1,4 @@
+package org.vilojona.services;
+
+public record IssueAndFix(String file, String rule, AISuggestion fix) {
+}
@@ -0,0 +1,171 @@
+package org.vilojona.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonarqube.ws.Issues.Issue;
+import org.sonarqube.ws.Issues.SearchWsResponse;
+import org.sonarqube.ws.client.WsClient;
+import org.sonarqube.ws.client.issues.SearchRequest;
+
+/**
+ * Lists all the issues of a set of slices, whatever their number.
+ *
+ * {@code api/issues/search} refuses to page past 10,000 results. A slice with
+ * more issues than that is split in two halves by creation date, again and
+ * again until every part fits. The total of a slice is probed with a page of
+ * one issue, so that only the slices that are not split are listed, in
+ * parallel and with the largest page size the server accepts. The pages are
+ * handed to the sink as they come, so the order of the issues across slices
+ * is not deterministic.
+ */
+class IssueEnumerator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IssueEnumerator.class);
+    static final int MAX_RESULTS = 10_000;
+    static final int PAGE_SIZE = 500;
+
+    private final WsClient wsClient;
+    private final IssueQuery query;
+    private final int parallelism;
+    private final PageSink sink;
+    private final ApiMetrics metrics;
+    private final CallStats stats;
+
+    IssueEnumerator(WsClient wsClient, IssueQuery query, int parallelism, PageSink sink, ApiMetrics metrics,
+            CallStats stats) {
+        this.wsClient = wsClient;
+        this.query = query;
+        this.parallelism = parallelism;
+        this.sink = sink;
+        this.metrics = metrics;
+        this.stats = stats;
+    }
+
+    void enumerate(List<IssueSlice> slices) throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(parallelism,
+                Thread.ofVirtual().name("issue-pager-" + query.project() + "-", 0).factory());
+        var running = new Phaser(1);
+        var failure = new AtomicReference<RuntimeException>();
+        try {
+            slices.forEach(slice -> submit(executor, running, failure, slice));
+            running.awaitAdvanceInterruptibly(running.arrive());
+        } finally {
+            executor.shutdownNow();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    private void submit(ExecutorService executor, Phaser running, AtomicReference<RuntimeException> failure,
+            IssueSlice slice) {
+        running.register();
+        try {
+            executor.execute(() -> {
+                try {
+                    fetch(slice, split -> submit(executor, running, failure, split));
+                } catch (InterruptedException e) {
+                    // cancelled, the other slices are being cancelled too
+                } catch (RuntimeException e) {
+                    if (failure.compareAndSet(null, e)) {
+                        executor.shutdownNow();
+                    }
+                } finally {
+                    running.arriveAndDeregister();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the enumeration has failed or has been cancelled
+            running.arriveAndDeregister();
+        }
+    }
+
+    private void fetch(IssueSlice slice, SliceSubmitter submitter) throws InterruptedException {
+        // a page of one issue tells the total without listing a full page a split would throw away
+        var total = search(slice, 1, 1, null).getPaging().getTotal();
+        if (total > MAX_RESULTS) {
+            var halves = split(slice);
+            if (!halves.isEmpty()) {
+                halves.forEach(submitter::submit);
+                return;
+            }
+            LOGGER.warn("{} issues of {} were created in the same second, only {} of them can be listed", total,
+                    query.project(), MAX_RESULTS);
+        }
+
+        var listable = Math.min(total, MAX_RESULTS);
+        var issuesRetrieved = 0L;
+        var lastPageIssues = -1;
+        for (var page = 1; lastPageIssues != 0 && issuesRetrieved < listable; page++) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            var response = search(slice, page, PAGE_SIZE, null);
+            lastPageIssues = response.getIssuesCount();
+            issuesRetrieved += lastPageIssues;
+            sink.accept(response.getIssuesList(), page == 1 ? listable : 0);
+        }
+    }
+
+    /**
+     * Splits the slice in two halves of its creation date window, or returns no
+     * slice when the window cannot be split any further.
+     */
+    private List<IssueSlice> split(IssueSlice slice) {
+        var after = slice.createdAfter() != null ? slice.createdAfter() : firstCreationDate(slice, true);
+        var before = slice.createdBefore() != null ? slice.createdBefore()
+                : firstCreationDate(slice, false).plusSeconds(1);
+        var middle = after.plus(Duration.between(after, before).dividedBy(2)).truncatedTo(ChronoUnit.SECONDS);
+        if (!middle.isAfter(after)) {
+            return List.of();
+        }
+        return List.of(slice.createdBetween(after, middle), slice.createdBetween(middle, before));
+    }
+
+    private Instant firstCreationDate(IssueSlice slice, boolean ascending) {
+        var response = search(slice, 1, 1, ascending);
+        return IssueSlice.DATE_FORMAT.parse(response.getIssues(0).getCreationDate(), Instant::from);
+    }
+
+    private SearchWsResponse search(IssueSlice slice, int page, int pageSize, Boolean creationDateAscending) {
+        var issueRequest = new SearchRequest();
+        issueRequest.setProjects(Collections.singletonList(query.project()));
+        if (query.severity() != null) {
+            issueRequest.setSeverities(List.of(query.severity()));
+        }
+        slice.narrow(issueRequest);
+        if (creationDateAscending != null) {
+            issueRequest.setS("CREATION_DATE");
+            issueRequest.setAsc(String.valueOf(creationDateAscending));
+        }
+        issueRequest.setP(String.valueOf(page));
+        issueRequest.setPs(String.valueOf(pageSize));
+        return metrics.observeUnchecked(ApiMetrics.Call.ISSUES_SEARCH, stats,
+                () -> wsClient.issues().search(issueRequest));
+    }
+
+    @FunctionalInterface
+    interface PageSink {
+        /**
+         * Takes a page of issues. The first page of every slice also tells how
+         * many issues the slice lists in total, the others tell 0.
+         */
+        void accept(List<Issue> issues, long sliceTotal) throws InterruptedException;
+    }
+
+    @FunctionalInterface
+    private interface SliceSubmitter {
+        void submit(IssueSlice slice);
+    }
+}
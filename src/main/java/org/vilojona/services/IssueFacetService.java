@@ -0,0 +1,171 @@
+package org.vilojona.services;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sonarqube.ws.client.issues.SearchRequest;
+import org.springframework.stereotype.Service;
+
+/**
+ * Counts the issues matching a query by severity, rule and directory, and by
+ * project when the query is for all the projects, without listing them: every
+ * slice of the query, see {@link FolderResolver}, is searched for a single
+ * issue with the facets of {@code api/issues/search}.
+ *
+ * The server reports the most frequent values of each facet only. When the
+ * folder of the query cannot be searched on the server, as for all the
+ * projects at once, only the directory counts are narrowed to it.
+ */
+@Service
+public class IssueFacetService {
+
+    private static final Map<String, IssueStore.Field> FIELDS_BY_FACET = Map.of(
+            "projects", IssueStore.Field.PROJECT,
+            "severities", IssueStore.Field.SEVERITY,
+            "rules", IssueStore.Field.RULE,
+            "directories", IssueStore.Field.FOLDER);
+    private static final String ROOT_DIRECTORY = "/";
+
+    private final SonarQubeClients clients;
+    private final FolderResolver folderResolver;
+    private final ApiMetrics metrics;
+
+    public IssueFacetService(SonarQubeClients clients, FolderResolver folderResolver, ApiMetrics metrics) {
+        this.clients = clients;
+        this.folderResolver = folderResolver;
+        this.metrics = metrics;
+    }
+
+    public IssueFacets facets(SonarQubeConnection connection, IssueQuery query) {
+        var allProjects = PortfolioScanService.ALL_PROJECTS.equals(query.project());
+        var hasFolder = query.folder() != null && !query.folder().isEmpty();
+        var slices = allProjects ? List.of(IssueSlice.ALL) : folderResolver.resolveSlices(connection, query);
+        var folderOnClient = hasFolder && slices.equals(List.of(IssueSlice.ALL));
+
+        var wsClient = clients.wsClient(connection);
+        var total = 0L;
+        var counts = new EnumMap<IssueStore.Field, Map<String, Long>>(IssueStore.Field.class);
+        for (var slice : slices) {
+            var issueRequest = new SearchRequest();
+            if (!allProjects) {
+                issueRequest.setProjects(List.of(query.project()));
+            }
+            if (query.severity() != null) {
+                issueRequest.setSeverities(List.of(query.severity()));
+            }
+            slice.narrow(issueRequest);
+            issueRequest.setFacets(allProjects ? List.of("projects", "severities", "rules", "directories")
+                    : List.of("severities", "rules", "directories"));
+            issueRequest.setPs("1");
+            var response = metrics.observeUnchecked(ApiMetrics.Call.ISSUES_SEARCH, null,
+                    () -> wsClient.issues().search(issueRequest));
+            total += response.getPaging().getTotal();
+            for (var facet : response.getFacets().getFacetsList()) {
+                var field = FIELDS_BY_FACET.get(facet.getProperty());
+                if (field == null) {
+                    continue;
+                }
+                var fieldCounts = counts.computeIfAbsent(field, newField -> new HashMap<>());
+                for (var value : facet.getValuesList()) {
+                    if (!folderOnClient || field != IssueStore.Field.FOLDER
+                            || isInFolder(value.getVal(), query.folder())) {
+                        fieldCounts.merge(value.getVal(), value.getCount(), Long::sum);
+                    }
+                }
+            }
+        }
+        counts.replaceAll((field, fieldCounts) -> mostFrequentFirst(fieldCounts));
+        return new IssueFacets(total, counts);
+    }
+
+    /**
+     * Tells whether the directory is the folder or one of its subdirectories,
+     * not a sibling whose name starts like it.
+     */
+    private static boolean isInFolder(String directory, String folder) {
+        var prefix = folder.endsWith("/") ? folder : folder + "/";
+        return directory.equals(prefix.substring(0, prefix.length() - 1)) || directory.startsWith(prefix);
+    }
+
+    private static Map<String, Long> mostFrequentFirst(Map<String, Long> counts) {
+        var sorted = new LinkedHashMap<String, Long>();
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(entry -> sorted.put(entry.getKey(), entry.getValue()));
+        return sorted;
+    }
+
+    /**
+     * How many issues match a query, in total and for each value of the
+     * fields counted, most frequent values first.
+     */
+    public record IssueFacets(
+        long total,
+        Map<IssueStore.Field, Map<String, Long>> counts
+    ) {
+
+        public static final IssueFacets NONE = new IssueFacets(0, Map.of());
+
+        /**
+         * Returns the count of every value of every facet, along with how many
+         * of those issues are among the issues with an AI fix found so far.
+         */
+        public List<FacetCount> withAIFix(IssueStore issuesWithAIFix) {
+            var facetCounts = new ArrayList<FacetCount>();
+            for (var facet : counts.entrySet()) {
+                var withAIFix = countWithAIFix(facet.getKey(), issuesWithAIFix);
+                facet.getValue().forEach((value, issues) -> facetCounts.add(
+                        new FacetCount(facet.getKey(), value, issues, withAIFix.getOrDefault(value, 0))));
+            }
+            facetCounts.sort(Comparator.comparing(FacetCount::field));
+            return facetCounts;
+        }
+
+        private static Map<String, Integer> countWithAIFix(IssueStore.Field field, IssueStore issuesWithAIFix) {
+            var counts = issuesWithAIFix.countBy(field, IssueStore.Filter.NONE);
+            if (field != IssueStore.Field.FOLDER) {
+                return counts;
+            }
+            // the store has the folders of the files, the facet the paths of their directories
+            var projects = issuesWithAIFix.countBy(IssueStore.Field.PROJECT, IssueStore.Filter.NONE).keySet();
+            var countsByDirectory = new HashMap<String, Integer>();
+            counts.forEach((folder, count) -> {
+                var directory = folder.substring(pathStart(folder, projects));
+                countsByDirectory.merge(directory.isEmpty() ? ROOT_DIRECTORY : directory, count, Integer::sum);
+            });
+            return countsByDirectory;
+        }
+
+        /**
+         * Where the path starts in a folder, after the key of its project,
+         * which may have colons of its own, as {@code groupId:artifactId}.
+         */
+        private static int pathStart(String folder, Set<String> projects) {
+            var pathStart = folder.indexOf(':') + 1;
+            for (var project : projects) {
+                if (project.length() + 1 > pathStart && folder.startsWith(project + ":")) {
+                    pathStart = project.length() + 1;
+                }
+            }
+            return pathStart;
+        }
+    }
+
+    /**
+     * How many of the issues with a value of a field the server counted, and
+     * how many of them have an AI fix.
+     */
+    public record FacetCount(
+        IssueStore.Field field,
+        String value,
+        long issues,
+        int withAIFix
+    ) {
+    }
+}
@@ -0,0 +1,26 @@
+package org.vilojona.services;
+
+import org.sonarqube.ws.Issues.Issue;
+
+/**
+ * The issues to look for: those of a project, optionally narrowed to a
+ * severity and to the files under a folder.
+ */
+public record IssueQuery(
+    String project,
+    String severity,
+    String folder
+) {
+
+    /**
+     * Tells whether the issue matches the whole query, for issues that were not
+     * searched with it.
+     */
+    public boolean matches(Issue issue) {
+        return (severity == null || severity.equals(issue.getSeverity().name())) && isInFolder(issue);
+    }
+
+    public boolean isInFolder(Issue issue) {
+        return folder == null || folder.isEmpty() || issue.getComponent().startsWith(project + ":" + folder);
+    }
+}
@@ -0,0 +1,48 @@
+package org.vilojona.services;
+
+import org.sonarqube.ws.Common.Severity;
+import org.sonarqube.ws.Common.TextRange;
+import org.sonarqube.ws.Issues.Issue;
+
+/**
+ * The fields of an issue that are shown and exported, or that the AI fixes
+ * depend on, without the rest of the search response (flows, comments,
+ * impacts...). Of its text range, only the lines are kept, 0 when it has none.
+ */
+public record IssueRow(
+    String key,
+    String project,
+    Severity severity,
+    String rule,
+    String message,
+    String component,
+    int line,
+    int startLine,
+    int endLine
+) {
+
+    public static IssueRow of(Issue issue) {
+        return new IssueRow(issue.getKey(), issue.getProject(), issue.getSeverity(), issue.getRule(),
+                issue.getMessage(), issue.getComponent(), issue.getLine(), issue.getTextRange().getStartLine(),
+                issue.getTextRange().getEndLine());
+    }
+
+    /**
+     * An issue with only the fields of this row, for the services that take
+     * issues.
+     */
+    public Issue toIssue() {
+        var issue = Issue.newBuilder()
+                .setKey(key)
+                .setProject(project)
+                .setSeverity(severity)
+                .setRule(rule)
+                .setMessage(message)
+                .setComponent(component)
+                .setLine(line);
+        if (startLine > 0) {
+            issue.setTextRange(TextRange.newBuilder().setStartLine(startLine).setEndLine(endLine));
+        }
+        return issue.build();
+    }
+}
@@ -0,0 +1,304 @@
+package org.vilojona.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonarqube.ws.Issues.Issue;
+import org.sonarqube.ws.client.issues.SearchRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Lists the issues matching a query and keeps those that have an AI fix.
+ *
+ * When the query has a folder, only the issues under it are listed, see
+ * {@link FolderResolver}, and large sets of issues are split to get past the
+ * search limits, see {@link IssueEnumerator}. Paging and probing run as a
+ * pipeline: producer threads page through {@code api/issues/search} into a
+ * bounded queue while the caller probes the pages already fetched. When
+ * probing falls behind, the full queue holds the producer back, so memory
+ * stays bounded whatever the number of issues.
+ *
+ * Every scan is recorded in a {@link ScanSnapshotService snapshot}, so that an
+ * incremental scan of the same query only has to probe the issues changed
+ * since the last one.
+ */
+@Service
+public class IssueScanService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IssueScanService.class);
+    /**
+     * How far before the start of the last scan an incremental scan looks for
+     * changes, in case the clocks of this machine and of the server differ.
+     */
+    private static final Duration CLOCK_SKEW = Duration.ofMinutes(5);
+
+    /**
+     * The order the issues are returned in, which does not depend on the order
+     * the slices were fetched in.
+     */
+    public static final Comparator<Issue> ISSUE_ORDER = Comparator.comparing(Issue::getComponent)
+            .thenComparingInt(Issue::getLine)
+            .thenComparing(Issue::getKey);
+
+    private final SonarQubeClients clients;
+    private final FolderResolver folderResolver;
+    private final FixAvailabilityService fixAvailabilityService;
+    private final ScanSnapshotService snapshots;
+    private final int pageQueueCapacity;
+    private final int parallelSlices;
+    private final ApiMetrics metrics;
+
+    public IssueScanService(SonarQubeClients clients, FolderResolver folderResolver,
+            FixAvailabilityService fixAvailabilityService, ScanSnapshotService snapshots, ApiMetrics metrics,
+            @Value("${bulkfix.scan.page-queue-capacity:4}") int pageQueueCapacity,
+            @Value("${bulkfix.scan.parallel-slices:4}") int parallelSlices) {
+        this.clients = clients;
+        this.folderResolver = folderResolver;
+        this.fixAvailabilityService = fixAvailabilityService;
+        this.snapshots = snapshots;
+        this.metrics = metrics;
+        this.pageQueueCapacity = pageQueueCapacity;
+        this.parallelSlices = parallelSlices;
+    }
+
+    /**
+     * Returns the issues matching the query that have an AI fix available, in
+     * {@link #ISSUE_ORDER}, and records them in the snapshot of the query.
+     *
+     * An incremental scan starts from the snapshot of the last scan and only
+     * probes the issues updated since, new ones included. It falls back to a
+     * full scan when there is no snapshot yet, or when too many issues changed
+     * to be listed. Issues deleted from the server are only forgotten by a
+     * full scan.
+     */
+    public List<Issue> scan(SonarQubeConnection connection, IssueQuery query, boolean incremental,
+            ScanListener listener) throws InterruptedException {
+        var stats = new CallStats();
+        var issuesWithAIFix = scan(connection, query, incremental, stats, listener);
+        LOGGER.info("Scan of {} {}", query.project(), stats.summary());
+        return issuesWithAIFix;
+    }
+
+    /**
+     * Scans like {@link #scan(SonarQubeConnection, IssueQuery, boolean, ScanListener)},
+     * adding up the calls made to SonarQube in the given stats as they complete.
+     */
+    public List<Issue> scan(SonarQubeConnection connection, IssueQuery query, boolean incremental,
+            CallStats stats, ScanListener listener) throws InterruptedException {
+        return scan(connection, query, incremental, stats, null, listener);
+    }
+
+    /**
+     * Scans with probes that also take a permit of the shared budget, if any,
+     * see {@link FixAvailabilityService#newProber(SonarQubeConnection, CallStats, Semaphore)}.
+     */
+    List<Issue> scan(SonarQubeConnection connection, IssueQuery query, boolean incremental, CallStats stats,
+            Semaphore sharedProbeBudget, ScanListener listener) throws InterruptedException {
+        var scanStartedAt = Instant.now();
+        var lastScanStartedAt = incremental ? snapshots.lastScanStartedAt(connection, query)
+                : Optional.<Instant>empty();
+        if (lastScanStartedAt.isPresent()) {
+            var changedIssues = listIssuesUpdatedSince(connection, query,
+                    lastScanStartedAt.get().minus(CLOCK_SKEW), stats);
+            if (changedIssues.isPresent()) {
+                var issuesWithAIFix = rescan(connection, query, changedIssues.get(), stats, sharedProbeBudget,
+                        listener);
+                snapshots.scanCompleted(connection, query, scanStartedAt);
+                return issuesWithAIFix;
+            }
+            LOGGER.info("Too many issues of {} changed since {}, scanning them all", query.project(),
+                    lastScanStartedAt.get());
+        }
+
+        snapshots.startFullScan(connection, query);
+        var recordingListener = new ScanListener() {
+            @Override
+            public void onProgress(ScanProgress progress, List<Issue> newIssuesWithAIFix) {
+                listener.onProgress(progress, newIssuesWithAIFix);
+            }
+
+            @Override
+            public void onProbed(List<Issue> probedIssues, List<Issue> issuesWithAIFix) {
+                snapshots.record(connection, query, probedIssues, issuesWithAIFix);
+            }
+        };
+        var issuesWithAIFix = getIssuesFilteredAndWithAIFix(connection, query, stats, sharedProbeBudget,
+                recordingListener);
+        snapshots.scanCompleted(connection, query, scanStartedAt);
+        return issuesWithAIFix;
+    }
+
+    private List<Issue> rescan(SonarQubeConnection connection, IssueQuery query, List<Issue> changedIssues,
+            CallStats stats, Semaphore sharedProbeBudget, ScanListener listener) throws InterruptedException {
+        var matchingIssues = changedIssues.stream().filter(query::matches).toList();
+        var otherIssueKeys = changedIssues.stream().filter(issue -> !query.matches(issue)).map(Issue::getKey)
+                .toList();
+        var probedWithAIFix = await(fixAvailabilityService.newProber(connection, stats, sharedProbeBudget)
+                .submit(matchingIssues));
+        snapshots.remove(connection, query, otherIssueKeys);
+        snapshots.record(connection, query, matchingIssues, probedWithAIFix);
+
+        var issuesWithAIFix = snapshots.issuesWithAIFix(connection, query);
+        var total = snapshots.countIssues(connection, query);
+        listener.onProgress(new ScanProgress(total, total, total, issuesWithAIFix.size()), issuesWithAIFix);
+        return issuesWithAIFix;
+    }
+
+    /**
+     * Lists the issues of the project updated since the given time, whatever
+     * their severity or file so that the issues that no longer match the query
+     * are listed too, or nothing when there are too many to be listed.
+     */
+    private Optional<List<Issue>> listIssuesUpdatedSince(SonarQubeConnection connection, IssueQuery query,
+            Instant since, CallStats stats) {
+        var wsClient = clients.wsClient(connection);
+        var issues = new ArrayList<Issue>();
+        for (var page = 1;; page++) {
+            var issueRequest = new SearchRequest();
+            issueRequest.setProjects(Collections.singletonList(query.project()));
+            issueRequest.setS("UPDATE_DATE");
+            issueRequest.setAsc("false");
+            issueRequest.setP(String.valueOf(page));
+            issueRequest.setPs(String.valueOf(IssueEnumerator.PAGE_SIZE));
+            var response = metrics.observeUnchecked(ApiMetrics.Call.ISSUES_SEARCH, stats,
+                    () -> wsClient.issues().search(issueRequest));
+            for (var issue : response.getIssuesList()) {
+                if (IssueSlice.DATE_FORMAT.parse(issue.getUpdateDate(), Instant::from).isBefore(since)) {
+                    return Optional.of(issues);
+                }
+                issues.add(issue);
+            }
+            var listed = (long) page * IssueEnumerator.PAGE_SIZE;
+            if (response.getIssuesCount() == 0 || listed >= response.getPaging().getTotal()) {
+                return Optional.of(issues);
+            }
+            if (listed >= IssueEnumerator.MAX_RESULTS) {
+                return Optional.empty();
+            }
+        }
+    }
+
+    /**
+     * Returns the issues matching the query that have an AI fix available, in
+     * {@link #ISSUE_ORDER}.
+     *
+     * The listener is told about progress, and about the issues with an AI fix
+     * found so far, as soon as they are known. The scan stops when the calling
+     * thread is interrupted.
+     */
+    public List<Issue> getIssuesFilteredAndWithAIFix(SonarQubeConnection connection, IssueQuery query,
+            CallStats stats, ScanListener listener) throws InterruptedException {
+        return getIssuesFilteredAndWithAIFix(connection, query, stats, null, listener);
+    }
+
+    private List<Issue> getIssuesFilteredAndWithAIFix(SonarQubeConnection connection, IssueQuery query,
+            CallStats stats, Semaphore sharedProbeBudget, ScanListener listener) throws InterruptedException {
+        var pages = new ArrayBlockingQueue<Page>(pageQueueCapacity);
+        var producer = Thread.ofVirtual().name("issue-pager-" + query.project())
+                .start(() -> fetchPages(connection, query, stats, pages));
+
+        var prober = fixAvailabilityService.newProber(connection, stats, sharedProbeBudget);
+        var pendingProbes = new ArrayDeque<PendingProbe>();
+        var issuesWithAIFix = new ArrayList<Issue>();
+        var seenKeys = new HashSet<String>();
+        var total = 0L;
+        var scanned = 0L;
+        var matching = 0L;
+        try {
+            for (var page = pages.take(); page != Page.LAST; page = pages.take()) {
+                if (page.failure() != null) {
+                    throw page.failure();
+                }
+                var newIssues = page.issues().stream().filter(issue -> seenKeys.add(issue.getKey())).toList();
+                var issuesInFolder = newIssues.stream().filter(query::isInFolder).toList();
+                total += page.sliceTotal();
+                scanned += newIssues.size();
+                matching += issuesInFolder.size();
+                pendingProbes.add(new PendingProbe(issuesInFolder, prober.submit(issuesInFolder)));
+
+                var found = new ArrayList<Issue>();
+                while (!pendingProbes.isEmpty() && pendingProbes.peek().issuesWithAIFix().isDone()) {
+                    found.addAll(await(pendingProbes.poll(), listener));
+                }
+                issuesWithAIFix.addAll(found);
+                listener.onProgress(new ScanProgress(total, scanned, matching, issuesWithAIFix.size()), found);
+            }
+            while (!pendingProbes.isEmpty()) {
+                var found = await(pendingProbes.poll(), listener);
+                issuesWithAIFix.addAll(found);
+                listener.onProgress(new ScanProgress(total, scanned, matching, issuesWithAIFix.size()), found);
+            }
+        } finally {
+            producer.interrupt();
+        }
+        issuesWithAIFix.sort(ISSUE_ORDER);
+        return issuesWithAIFix;
+    }
+
+    private static List<Issue> await(PendingProbe probe, ScanListener listener) throws InterruptedException {
+        var issuesWithAIFix = await(probe.issuesWithAIFix());
+        listener.onProbed(probe.issues(), issuesWithAIFix);
+        return issuesWithAIFix;
+    }
+
+    private static List<Issue> await(CompletableFuture<List<Issue>> probes) throws InterruptedException {
+        try {
+            return probes.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void fetchPages(SonarQubeConnection connection, IssueQuery query, CallStats stats,
+            BlockingQueue<Page> pages) {
+        try {
+            try {
+                var enumerator = new IssueEnumerator(clients.wsClient(connection), query, parallelSlices,
+                        (issues, sliceTotal) -> pages.put(new Page(issues, sliceTotal, null)), metrics, stats);
+                enumerator.enumerate(folderResolver.resolveSlices(connection, query));
+                pages.put(Page.LAST);
+            } catch (RuntimeException e) {
+                pages.put(new Page(List.of(), 0, e));
+            }
+        } catch (InterruptedException e) {
+            // the consumer is gone, nobody is waiting for more pages
+        }
+    }
+
+    @FunctionalInterface
+    public interface ScanListener {
+        void onProgress(ScanProgress progress, List<Issue> newIssuesWithAIFix);
+
+        /**
+         * Told about every batch of issues probed, with those of them that have
+         * an AI fix.
+         */
+        default void onProbed(List<Issue> probedIssues, List<Issue> issuesWithAIFix) {
+        }
+    }
+
+    private record PendingProbe(
+        List<Issue> issues,
+        CompletableFuture<List<Issue>> issuesWithAIFix
+    ) {
+    }
+
+    private record Page(List<Issue> issues, long sliceTotal, RuntimeException failure) {
+        static final Page LAST = new Page(List.of(), 0, null);
+    }
+}
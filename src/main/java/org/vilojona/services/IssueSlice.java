@@ -0,0 +1,57 @@
+package org.vilojona.services;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import org.sonarqube.ws.client.issues.SearchRequest;
+
+/**
+ * A part of the issues matching a query that is searched on its own: the
+ * issues in some directories, or in some files, optionally only those created
+ * in a window of time. Together, the slices of a query cover all its issues.
+ */
+public record IssueSlice(
+    List<String> directories,
+    List<String> componentKeys,
+    Instant createdAfter,
+    Instant createdBefore
+) {
+
+    public static final IssueSlice ALL = new IssueSlice(List.of(), List.of(), null, null);
+
+    static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ")
+            .withZone(ZoneOffset.UTC);
+
+    public static IssueSlice ofDirectories(List<String> directories) {
+        return new IssueSlice(directories, List.of(), null, null);
+    }
+
+    public static IssueSlice ofComponentKeys(List<String> componentKeys) {
+        return new IssueSlice(List.of(), componentKeys, null, null);
+    }
+
+    /**
+     * The same slice, narrowed to the issues created from {@code createdAfter}
+     * included to {@code createdBefore} excluded.
+     */
+    public IssueSlice createdBetween(Instant createdAfter, Instant createdBefore) {
+        return new IssueSlice(directories, componentKeys, createdAfter, createdBefore);
+    }
+
+    void narrow(SearchRequest issueRequest) {
+        if (!directories.isEmpty()) {
+            issueRequest.setDirectories(directories);
+        }
+        if (!componentKeys.isEmpty()) {
+            issueRequest.setComponentKeys(componentKeys);
+        }
+        if (createdAfter != null) {
+            issueRequest.setCreatedAfter(DATE_FORMAT.format(createdAfter));
+        }
+        if (createdBefore != null) {
+            issueRequest.setCreatedBefore(DATE_FORMAT.format(createdBefore));
+        }
+    }
+}
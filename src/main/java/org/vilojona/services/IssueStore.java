@@ -0,0 +1,380 @@
+package org.vilojona.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.sonarqube.ws.Common.Severity;
+import org.sonarqube.ws.Issues.Issue;
+
+/**
+ * The issues found by a scan, kept for a grid to page through them, filtered,
+ * sorted and counted by field.
+ *
+ * Only the fields of an {@link IssueRow} are kept, one column each: projects,
+ * rules, messages, files and folders are interned and stored as ids in int
+ * arrays, severities as bytes and keys packed in a single byte array, so an
+ * issue takes a few dozen bytes instead of a whole search response message.
+ * A filter is matched against the distinct values of each field, then the
+ * columns are scanned for the matching ids. The order of the issues for a
+ * sort is computed once and kept: the issues added afterwards are sorted on
+ * their own and merged into it.
+ */
+public class IssueStore {
+
+    private static final Severity[] SEVERITIES = Severity.values();
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final StringPool projects = new StringPool();
+    private final StringPool rules = new StringPool();
+    private final StringPool messages = new StringPool();
+    private final StringPool components = new StringPool();
+    private final StringPool folders = new StringPool();
+    private int[] folderIdsByComponentId = new int[INITIAL_CAPACITY];
+    private int knownFolders;
+
+    private int size;
+    // the keys, one after the other in UTF-8, and where each one ends
+    private byte[] keyBytes = new byte[32 * INITIAL_CAPACITY];
+    private int[] keyEnds = new int[INITIAL_CAPACITY];
+    private int[] projectIds = new int[INITIAL_CAPACITY];
+    private byte[] severities = new byte[INITIAL_CAPACITY];
+    private int[] ruleIds = new int[INITIAL_CAPACITY];
+    private int[] messageIds = new int[INITIAL_CAPACITY];
+    private int[] componentIds = new int[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int[] startLines = new int[INITIAL_CAPACITY];
+    private int[] endLines = new int[INITIAL_CAPACITY];
+
+    private final Map<List<Sort>, int[]> positionsBySort = new HashMap<>();
+    private Filter lastFilter;
+    private BitSet lastMatches;
+
+    public synchronized void addAll(Collection<Issue> newIssues) {
+        ensureCapacity(size + newIssues.size());
+        for (var issue : newIssues) {
+            addKey(issue.getKey());
+            projectIds[size] = projects.id(issue.getProject());
+            severities[size] = (byte) issue.getSeverity().ordinal();
+            ruleIds[size] = rules.id(issue.getRule());
+            messageIds[size] = messages.id(issue.getMessage());
+            componentIds[size] = componentId(issue.getProject(), issue.getComponent());
+            lines[size] = issue.getLine();
+            startLines[size] = issue.getTextRange().getStartLine();
+            endLines[size] = issue.getTextRange().getEndLine();
+            size++;
+        }
+        lastFilter = null;
+    }
+
+    /**
+     * All the issues, in the order they were added, with only the fields of an
+     * {@link IssueRow}.
+     */
+    public synchronized List<Issue> issues() {
+        return IntStream.range(0, size).mapToObj(position -> row(position).toIssue()).toList();
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int count(Filter filter) {
+        var matches = matches(filter);
+        return matches == null ? size : matches.cardinality();
+    }
+
+    /**
+     * Returns a window of the issues matching the filter, sorted by the given
+     * fields and then in {@link IssueScanService#ISSUE_ORDER}.
+     */
+    public synchronized List<IssueRow> fetch(Filter filter, List<Sort> sorts, int offset, int limit) {
+        var matches = matches(filter);
+        var window = new ArrayList<IssueRow>(Math.min(limit, size));
+        var skipped = 0;
+        for (var position : positions(sorts)) {
+            if (window.size() == limit) {
+                break;
+            }
+            if (matches != null && !matches.get(position)) {
+                continue;
+            }
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                window.add(row(position));
+            }
+        }
+        return window;
+    }
+
+    /**
+     * Counts the issues matching the filter by value of the field, most
+     * frequent values first.
+     */
+    public synchronized Map<String, Integer> countBy(Field field, Filter filter) {
+        var matches = matches(filter);
+        var counts = new int[field == Field.SEVERITY ? SEVERITIES.length : pool(field).size()];
+        for (var position = 0; position < size; position++) {
+            if (matches == null || matches.get(position)) {
+                counts[valueId(field, position)]++;
+            }
+        }
+        var countsByValue = new LinkedHashMap<String, Integer>();
+        IntStream.range(0, counts.length).filter(id -> counts[id] > 0).boxed()
+                .sorted(Comparator.comparingInt((Integer id) -> counts[id]).reversed())
+                .forEach(id -> countsByValue.put(value(field, id), counts[id]));
+        return countsByValue;
+    }
+
+    private void addKey(String key) {
+        var bytes = key.getBytes(StandardCharsets.UTF_8);
+        var start = size == 0 ? 0 : keyEnds[size - 1];
+        if (start + bytes.length > keyBytes.length) {
+            keyBytes = Arrays.copyOf(keyBytes, Math.max(start + bytes.length, 2 * keyBytes.length));
+        }
+        System.arraycopy(bytes, 0, keyBytes, start, bytes.length);
+        keyEnds[size] = start + bytes.length;
+    }
+
+    private String key(int position) {
+        var start = position == 0 ? 0 : keyEnds[position - 1];
+        return new String(keyBytes, start, keyEnds[position] - start, StandardCharsets.UTF_8);
+    }
+
+    private IssueRow row(int position) {
+        return new IssueRow(key(position), projects.value(projectIds[position]), SEVERITIES[severities[position]],
+                rules.value(ruleIds[position]), messages.value(messageIds[position]),
+                components.value(componentIds[position]), lines[position], startLines[position], endLines[position]);
+    }
+
+    private int componentId(String project, String component) {
+        var componentId = components.id(component);
+        if (componentId == knownFolders) {
+            // a new file, whose folder is not known yet
+            if (knownFolders == folderIdsByComponentId.length) {
+                folderIdsByComponentId = Arrays.copyOf(folderIdsByComponentId, 2 * knownFolders);
+            }
+            folderIdsByComponentId[knownFolders++] = folders.id(folder(project, component));
+        }
+        return componentId;
+    }
+
+    /**
+     * The directory of a file component, or the project key followed by a
+     * colon for a file at the root of the project. Project keys may have
+     * colons of their own, as {@code groupId:artifactId}.
+     */
+    private static String folder(String project, String component) {
+        var pathStart = component.startsWith(project + ":") ? project.length() + 1 : component.indexOf(':') + 1;
+        var lastSlash = component.lastIndexOf('/');
+        return lastSlash < pathStart ? component.substring(0, pathStart) : component.substring(0, lastSlash);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > keyEnds.length) {
+            var newCapacity = Math.max(capacity, 2 * keyEnds.length);
+            keyEnds = Arrays.copyOf(keyEnds, newCapacity);
+            projectIds = Arrays.copyOf(projectIds, newCapacity);
+            severities = Arrays.copyOf(severities, newCapacity);
+            ruleIds = Arrays.copyOf(ruleIds, newCapacity);
+            messageIds = Arrays.copyOf(messageIds, newCapacity);
+            componentIds = Arrays.copyOf(componentIds, newCapacity);
+            lines = Arrays.copyOf(lines, newCapacity);
+            startLines = Arrays.copyOf(startLines, newCapacity);
+            endLines = Arrays.copyOf(endLines, newCapacity);
+        }
+    }
+
+    private StringPool pool(Field field) {
+        return switch (field) {
+            case PROJECT -> projects;
+            case RULE -> rules;
+            case FILE -> components;
+            case FOLDER -> folders;
+            case SEVERITY -> throw new IllegalArgumentException("Severities are not pooled");
+        };
+    }
+
+    /**
+     * The id of the value of the field for the issue: its id in the pool of the
+     * field, or the ordinal of the severity.
+     */
+    private int valueId(Field field, int position) {
+        return switch (field) {
+            case PROJECT -> projectIds[position];
+            case SEVERITY -> severities[position];
+            case RULE -> ruleIds[position];
+            case FILE -> componentIds[position];
+            case FOLDER -> folderIdsByComponentId[componentIds[position]];
+        };
+    }
+
+    private String value(Field field, int valueId) {
+        return field == Field.SEVERITY ? SEVERITIES[valueId].name() : pool(field).value(valueId);
+    }
+
+    /**
+     * Returns the positions of the issues matching the filter, or null when it
+     * matches them all.
+     */
+    private BitSet matches(Filter filter) {
+        if (filter.equals(lastFilter)) {
+            return lastMatches;
+        }
+        var fields = new ArrayList<Field>();
+        var acceptedValueIds = new ArrayList<boolean[]>();
+        for (var field : Field.values()) {
+            var filterValue = filter.value(field);
+            if (filterValue != null && !filterValue.isBlank()) {
+                var accepted = new boolean[field == Field.SEVERITY ? SEVERITIES.length : pool(field).size()];
+                for (var valueId = 0; valueId < accepted.length; valueId++) {
+                    accepted[valueId] = field.matches(value(field, valueId), filterValue);
+                }
+                fields.add(field);
+                acceptedValueIds.add(accepted);
+            }
+        }
+
+        BitSet matches = null;
+        if (!fields.isEmpty()) {
+            matches = new BitSet(size);
+            for (var position = 0; position < size; position++) {
+                var match = true;
+                for (var i = 0; match && i < fields.size(); i++) {
+                    match = acceptedValueIds.get(i)[valueId(fields.get(i), position)];
+                }
+                matches.set(position, match);
+            }
+        }
+        lastFilter = filter;
+        lastMatches = matches;
+        return matches;
+    }
+
+    /**
+     * Returns the positions of all the issues in the order of the sort, merging
+     * the issues added since it was last asked for into it.
+     */
+    private int[] positions(List<Sort> sorts) {
+        var sorted = positionsBySort.getOrDefault(sorts, new int[0]);
+        if (sorted.length < size) {
+            var comparator = comparator(sorts);
+            var added = IntStream.range(sorted.length, size).boxed().sorted(comparator)
+                    .mapToInt(Integer::intValue).toArray();
+            sorted = merge(sorted, added, comparator);
+            positionsBySort.put(List.copyOf(sorts), sorted);
+        }
+        return sorted;
+    }
+
+    private Comparator<Integer> comparator(List<Sort> sorts) {
+        Comparator<Integer> comparator = (first, second) -> 0;
+        for (var sort : sorts) {
+            var field = sort.field();
+            Comparator<Integer> fieldComparator = field == Field.SEVERITY
+                    ? Comparator.comparingInt(position -> severities[position])
+                    : Comparator.comparing(position -> value(field, valueId(field, position)));
+            comparator = comparator.thenComparing(sort.descending() ? fieldComparator.reversed() : fieldComparator);
+        }
+        // then in IssueScanService.ISSUE_ORDER
+        return comparator
+                .thenComparing(position -> components.value(componentIds[position]))
+                .thenComparingInt(position -> lines[position])
+                .thenComparing(this::key);
+    }
+
+    private static int[] merge(int[] first, int[] second, Comparator<Integer> comparator) {
+        var merged = new int[first.length + second.length];
+        int i = 0, j = 0, k = 0;
+        while (i < first.length && j < second.length) {
+            merged[k++] = comparator.compare(first[i], second[j]) <= 0 ? first[i++] : second[j++];
+        }
+        while (i < first.length) {
+            merged[k++] = first[i++];
+        }
+        while (j < second.length) {
+            merged[k++] = second[j++];
+        }
+        return merged;
+    }
+
+    /**
+     * Distinct strings, each with an id, the index it was added at.
+     */
+    private static final class StringPool {
+
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int id(String value) {
+            return ids.computeIfAbsent(value, newValue -> {
+                values.add(newValue);
+                return values.size() - 1;
+            });
+        }
+
+        String value(int id) {
+            return values.get(id);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+
+    public enum Field {
+        PROJECT,
+        SEVERITY,
+        RULE,
+        FILE,
+        FOLDER;
+
+        /**
+         * Severities are matched exactly, the other fields ignoring case and
+         * anywhere in the value.
+         */
+        boolean matches(String value, String filterValue) {
+            return this == SEVERITY ? value.equals(filterValue)
+                    : value.toLowerCase(Locale.ROOT).contains(filterValue.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    public record Sort(
+        Field field,
+        boolean descending
+    ) {
+    }
+
+    /**
+     * The values the issues must have, null or blank for any.
+     */
+    public record Filter(
+        String project,
+        String severity,
+        String rule,
+        String file
+    ) {
+
+        public static final Filter NONE = new Filter(null, null, null, null);
+
+        String value(Field field) {
+            return switch (field) {
+                case PROJECT -> project;
+                case SEVERITY -> severity;
+                case RULE -> rule;
+                case FILE -> file;
+                case FOLDER -> null;
+            };
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package org.vilojona.services;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A long-running operation submitted to the {@link JobService}, with its
+ * status and the last progress it reported.
+ *
+ * Listeners are told of every change, on the thread of the job, and must not
+ * block it. They are dropped once told that the job finished, so that a
+ * finished job kept for a while does not keep what they refer to, like the UI
+ * that submitted it.
+ */
+public final class Job {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Job.class);
+
+    private final long id;
+    private final String owner;
+    private final String name;
+    private final Instant submittedAt = Instant.now();
+    private final List<Consumer<Job>> listeners = new CopyOnWriteArrayList<>();
+    private volatile Status status = Status.QUEUED;
+    private volatile String message = "Waiting for another job to finish";
+    private volatile Instant finishedAt;
+    private volatile boolean cancelRequested;
+    private volatile Future<?> future;
+
+    Job(long id, String owner, String name, Consumer<Job> listener) {
+        this.id = id;
+        this.owner = owner;
+        this.name = name;
+        if (listener != null) {
+            listeners.add(listener);
+        }
+    }
+
+    public long id() {
+        return id;
+    }
+
+    public String owner() {
+        return owner;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Instant submittedAt() {
+        return submittedAt;
+    }
+
+    public Status status() {
+        return status;
+    }
+
+    /**
+     * The last progress reported while running, or how the job ended.
+     */
+    public String message() {
+        return message;
+    }
+
+    /**
+     * When the job ended, or null while it is queued or running.
+     */
+    public Instant finishedAt() {
+        return finishedAt;
+    }
+
+    public boolean isFinished() {
+        return status.isFinished();
+    }
+
+    /**
+     * Whether the job was asked to stop. A job stops at the next blocking call,
+     * which throws {@link InterruptedException}; a job looping without
+     * blocking should check it.
+     */
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    /**
+     * Reports the progress of the job to its listeners.
+     */
+    public void progress(String message) {
+        if (status == Status.RUNNING) {
+            this.message = message;
+            changed();
+        }
+    }
+
+    /**
+     * Stops the job, interrupting it if it is running. Does nothing once it has
+     * finished.
+     */
+    public void cancel() {
+        if (isFinished()) {
+            return;
+        }
+        cancelRequested = true;
+        if (future != null && future.cancel(true) && status == Status.QUEUED) {
+            // interrupted before it could even wait for its turn
+            finish(Status.CANCELLED, "Cancelled");
+        }
+    }
+
+    void submitted(Future<?> future) {
+        this.future = future;
+        if (cancelRequested) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Marks the job as running, unless it was cancelled while queued.
+     */
+    synchronized boolean start() {
+        if (status != Status.QUEUED || cancelRequested) {
+            return false;
+        }
+        status = Status.RUNNING;
+        message = "Running";
+        changed();
+        return true;
+    }
+
+    synchronized void finish(Status finalStatus, String finalMessage) {
+        if (isFinished()) {
+            return;
+        }
+        finishedAt = Instant.now();
+        message = finalMessage;
+        status = finalStatus;
+        changed();
+        listeners.clear();
+        future = null;
+    }
+
+    private void changed() {
+        for (var listener : listeners) {
+            try {
+                listener.accept(this);
+            } catch (RuntimeException e) {
+                // a listener that went away, like a closed browser tab, must not stop the job
+                LOGGER.debug("Listener of job {} failed", id, e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "#" + id + " " + name + " (" + status + ")";
+    }
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED,
+        CANCELLED;
+
+        public boolean isFinished() {
+            return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    /**
+     * The work of a job.
+     */
+    @FunctionalInterface
+    public interface Task {
+        /**
+         * Does the work, reporting its progress to the job, and returns the
+         * message the job ends with.
+         */
+        String run(Job job) throws Exception;
+    }
+}
@@ -0,0 +1,150 @@
+package org.vilojona.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Runs long-running operations, like scans, exports and deliveries of fixes,
+ * as jobs on virtual threads, off the thread of the request that started them.
+ *
+ * Every job belongs to an owner, a user or a session, and only
+ * {@code max-running-per-owner} jobs of an owner run at the same time: the
+ * others wait for their turn, so that one owner starting many heavy jobs
+ * cannot starve the others. Finished jobs are kept for {@code retention} so
+ * that their outcome can still be shown.
+ */
+@Service
+public class JobService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobService.class);
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicLong lastId = new AtomicLong();
+    private final ConcurrentHashMap<String, OwnerJobs> jobsByOwner = new ConcurrentHashMap<>();
+    private final int maxRunningPerOwner;
+    private final Duration retention;
+
+    public JobService(@Value("${bulkfix.jobs.max-running-per-owner:2}") int maxRunningPerOwner,
+            @Value("${bulkfix.jobs.retention:1h}") Duration retention) {
+        this.maxRunningPerOwner = Math.max(1, maxRunningPerOwner);
+        this.retention = retention;
+    }
+
+    /**
+     * Submits a job, which starts as soon as fewer than the maximum number of
+     * jobs of its owner are running. The listener, if any, is told of every
+     * change of the job, from the first one on.
+     */
+    public Job submit(String owner, String name, Job.Task task, Consumer<Job> listener) {
+        var job = new Job(lastId.incrementAndGet(), owner, name, listener);
+        var ownerJobs = jobsByOwner.compute(owner, (key, existing) -> {
+            var jobs = existing != null ? existing : new OwnerJobs(new Semaphore(maxRunningPerOwner, true));
+            jobs.add(job);
+            return jobs;
+        });
+        job.submitted(executor.submit(() -> run(job, task, ownerJobs.permits())));
+        return job;
+    }
+
+    /**
+     * The jobs of the owner, running or finished less than {@code retention}
+     * ago, the most recent first.
+     */
+    public List<Job> jobs(String owner) {
+        var ownerJobs = jobsByOwner.get(owner);
+        if (ownerJobs == null) {
+            return List.of();
+        }
+        synchronized (ownerJobs.jobs()) {
+            return ownerJobs.jobs().stream().sorted(Comparator.comparingLong(Job::id).reversed()).toList();
+        }
+    }
+
+    /**
+     * Cancels all the jobs of the owner that have not finished yet.
+     */
+    public void cancelAll(String owner) {
+        jobs(owner).forEach(Job::cancel);
+    }
+
+    private void run(Job job, Job.Task task, Semaphore permits) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            job.finish(Job.Status.CANCELLED, "Cancelled");
+            return;
+        }
+        try {
+            if (!job.start()) {
+                job.finish(Job.Status.CANCELLED, "Cancelled");
+                return;
+            }
+            LOGGER.debug("Job {} started", job);
+            var message = task.run(job);
+            job.finish(job.isCancelRequested() ? Job.Status.CANCELLED : Job.Status.SUCCEEDED,
+                    job.isCancelRequested() ? "Cancelled" : message);
+        } catch (InterruptedException e) {
+            job.finish(Job.Status.CANCELLED, "Cancelled");
+        } catch (Exception e) {
+            if (job.isCancelRequested()) {
+                // interrupted in the middle of I/O, which fails with an I/O error rather than an interruption
+                job.finish(Job.Status.CANCELLED, "Cancelled");
+            } else {
+                LOGGER.warn("Job {} failed", job, e);
+                job.finish(Job.Status.FAILED, "Failed: " + e.getMessage());
+            }
+        } finally {
+            permits.release();
+            LOGGER.debug("Job {} finished: {}", job, job.message());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${bulkfix.jobs.eviction-interval:PT5M}")
+    public void evictFinishedJobs() {
+        var oldest = Instant.now().minus(retention);
+        jobsByOwner.forEach((owner, ownerJobs) -> {
+            synchronized (ownerJobs.jobs()) {
+                ownerJobs.jobs().removeIf(job -> job.isFinished() && job.finishedAt().isBefore(oldest));
+            }
+            jobsByOwner.computeIfPresent(owner, (key, jobs) -> jobs.jobs().isEmpty() ? null : jobs);
+        });
+    }
+
+    @PreDestroy
+    void close() {
+        executor.shutdownNow();
+    }
+
+    private record OwnerJobs(
+        Semaphore permits,
+        List<Job> jobs
+    ) {
+
+        OwnerJobs(Semaphore permits) {
+            this(permits, new ArrayList<>());
+        }
+
+        void add(Job job) {
+            synchronized (jobs) {
+                jobs.add(job);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.vilojona.services;
+
+import java.util.List;
+
+import org.sonarqube.ws.Issues.Issue;
+
+/**
+ * What applying AI fixes to a local checkout did: the files changed, the
+ * issues whose fix was applied, and those whose fix was not, with why.
+ */
+public record LocalApplyResult(
+    int filesChanged,
+    List<Issue> applied,
+    List<Conflict> conflicts
+) {
+
+    public record Conflict(
+        Issue issue,
+        String reason
+    ) {
+    }
+}
@@ -0,0 +1,205 @@
+package org.vilojona.services;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonarqube.ws.Issues.Issue;
+import org.springframework.stereotype.Service;
+
+/**
+ * Applies AI fixes to the files of a local checkout of the project.
+ *
+ * The fixes are fetched in parallel and come grouped by file. As soon as all
+ * the fixes of a file are there, the file is patched on a thread of its own:
+ * it is read once through a file channel, every fix is checked against
+ * the other fixes of the file and against the source it was generated for,
+ * and the file is written back once with all the fixes that apply, see
+ * {@link FilePatch#apply()}.
+ */
+@Service
+public class LocalPatchService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalPatchService.class);
+
+    private final ExportService exportService;
+    private final SourceService sourceService;
+
+    public LocalPatchService(ExportService exportService, SourceService sourceService) {
+        this.exportService = exportService;
+        this.sourceService = sourceService;
+    }
+
+    /**
+     * Applies the AI fixes of the issues to the files under the checkout root.
+     * Issues whose fix cannot be fetched are logged and skipped, and the fixes
+     * of a file that cannot be patched are reported as conflicts.
+     */
+    public LocalApplyResult applyFixes(SonarQubeConnection connection, Path checkoutRoot, List<Issue> issues)
+            throws IOException, InterruptedException {
+        var root = checkoutRoot.toAbsolutePath().normalize();
+        var sortedIssues = issues.stream().sorted(IssueScanService.ISSUE_ORDER).toList();
+        var fileResults = new ArrayList<Future<LocalApplyResult>>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var fileFixes = new ArrayList<IssueFix>();
+            exportService.fetchAiSuggestionsInOrder(connection, sortedIssues, (issue, issueCodeFix) -> {
+                var component = issue.getComponent();
+                if (!fileFixes.isEmpty() && !fileFixes.getFirst().issue().getComponent().equals(component)) {
+                    var fixes = List.copyOf(fileFixes);
+                    fileResults.add(executor.submit(() -> applyToFile(connection, root, fixes)));
+                    fileFixes.clear();
+                }
+                fileFixes.add(new IssueFix(issue, issueCodeFix.fix()));
+            });
+            if (!fileFixes.isEmpty()) {
+                var fixes = List.copyOf(fileFixes);
+                fileResults.add(executor.submit(() -> applyToFile(connection, root, fixes)));
+            }
+        }
+
+        var filesChanged = 0;
+        var applied = new ArrayList<Issue>();
+        var conflicts = new ArrayList<LocalApplyResult.Conflict>();
+        for (var fileResult : fileResults) {
+            try {
+                var result = fileResult.get();
+                filesChanged += result.filesChanged();
+                applied.addAll(result.applied());
+                conflicts.addAll(result.conflicts());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return new LocalApplyResult(filesChanged, applied, conflicts);
+    }
+
+    /**
+     * Patches one file, its fixes being reported as conflicts when it fails,
+     * so that the other files are still reported.
+     */
+    private LocalApplyResult applyToFile(SonarQubeConnection connection, Path root, List<IssueFix> fixes) {
+        var component = fixes.getFirst().issue().getComponent();
+        try {
+            return patchFile(connection, root, component, fixes);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not patch {}", component, e);
+            return conflicts(fixes, getFileFromComponent(component) + " could not be patched: " + e.getMessage());
+        }
+    }
+
+    private LocalApplyResult patchFile(SonarQubeConnection connection, Path root, String component,
+            List<IssueFix> fixes) {
+        var path = getFileFromComponent(component);
+        var file = root.resolve(path).normalize();
+        if (!file.startsWith(root)) {
+            return conflicts(fixes, path + " is outside of the checkout");
+        }
+
+        SourceFile local;
+        try {
+            local = read(file);
+        } catch (NoSuchFileException e) {
+            return conflicts(fixes, path + " is not in the checkout");
+        } catch (CharacterCodingException e) {
+            return conflicts(fixes, path + " is not UTF-8");
+        } catch (IOException e) {
+            LOGGER.warn("Could not read {}", file, e);
+            return conflicts(fixes, path + " cannot be read: " + e.getMessage());
+        }
+
+        var analyzed = sourceService.getSourceFile(connection, component);
+        var patch = new FilePatch(path, local);
+        var applied = new ArrayList<Issue>();
+        var conflicts = new ArrayList<LocalApplyResult.Conflict>();
+        for (var fix : fixes) {
+            if (!hasSameLines(local, analyzed, fix.fix())) {
+                conflicts.add(new LocalApplyResult.Conflict(fix.issue(), path + " changed since it was analyzed"));
+            } else if (!patch.add(fix.fix())) {
+                conflicts.add(new LocalApplyResult.Conflict(fix.issue(), "overlaps another fix of " + path));
+            } else {
+                applied.add(fix.issue());
+            }
+        }
+        if (patch.isEmpty()) {
+            return new LocalApplyResult(0, List.of(), conflicts);
+        }
+
+        try {
+            write(file, patch.apply());
+        } catch (IOException e) {
+            LOGGER.warn("Could not write {}", file, e);
+            return conflicts(fixes, path + " cannot be written: " + e.getMessage());
+        }
+        return new LocalApplyResult(1, applied, conflicts);
+    }
+
+    /**
+     * Tells whether the lines the fix changes, or for an insertion the lines
+     * before and after it, are the same in the local file as in the source the
+     * fix was generated for.
+     */
+    private static boolean hasSameLines(SourceFile local, SourceFile analyzed, AISuggestion fix) {
+        if (local.hash().equals(analyzed.hash())) {
+            return true;
+        }
+        for (var change : fix.changes()) {
+            if (change.startLine() < 1 || change.endLine() < change.startLine() - 1) {
+                return false;
+            }
+            var startLine = change.endLine() < change.startLine() ? change.startLine() - 1 : change.startLine();
+            var endLine = change.endLine() < change.startLine() ? change.startLine() : change.endLine();
+            for (var line = Math.max(1, startLine); line <= endLine; line++) {
+                var inLocal = line <= local.lineCount();
+                var inAnalyzed = line <= analyzed.lineCount();
+                if (inLocal != inAnalyzed || (inLocal && !local.lines(line, line).equals(analyzed.lines(line, line)))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static SourceFile read(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // read into the heap rather than mapped, a mapped file cannot be rewritten on Windows
+            var content = ByteBuffer.allocate(Math.toIntExact(channel.size()));
+            while (content.hasRemaining() && channel.read(content) >= 0) {
+                // until the whole file is read
+            }
+            return SourceFile.of(StandardCharsets.UTF_8.newDecoder().decode(content.flip()).toString());
+        }
+    }
+
+    private static void write(Path file, String text) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            var content = StandardCharsets.UTF_8.encode(text);
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+        }
+    }
+
+    private static LocalApplyResult conflicts(List<IssueFix> fixes, String reason) {
+        return new LocalApplyResult(0, List.of(),
+                fixes.stream().map(fix -> new LocalApplyResult.Conflict(fix.issue(), reason)).toList());
+    }
+
+    private static String getFileFromComponent(String component) {
+        return component.substring(component.indexOf(":") + 1);
+    }
+
+    private record IssueFix(Issue issue, AISuggestion fix) {
+    }
+}
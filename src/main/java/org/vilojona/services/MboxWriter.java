@@ -0,0 +1,117 @@
+package org.vilojona.services;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonarqube.ws.Issues.Issue;
+
+/**
+ * Streams exported fixes to an mbox file that {@code git am} applies, one
+ * patch per file with all the fixes of that file.
+ *
+ * The fixes must come grouped by file, as they do in
+ * {@link IssueScanService#ISSUE_ORDER}: the patch of a file is written as soon
+ * as the fixes of the next file start, so only the fixes of one file are held
+ * in memory. As with {@code git format-patch}, patches of files with CRLF line
+ * endings need {@code git am --keep-cr}.
+ */
+class MboxWriter implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MboxWriter.class);
+    // the fixed separator line git format-patch writes at the start of every message
+    private static final String SEPARATOR = "From 0000000000000000000000000000000000000000 Mon Sep 17 00:00:00 2001\n";
+
+    private final SonarQubeConnection connection;
+    private final SourceService sourceService;
+    private final String author;
+    private final String date = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC));
+    private final Writer out;
+    private String component;
+    private FilePatch patch;
+    private StringBuilder body;
+    private int written;
+
+    MboxWriter(SonarQubeConnection connection, SourceService sourceService, String fileName, String author,
+            ExportOptions options) throws IOException {
+        this.connection = connection;
+        this.sourceService = sourceService;
+        this.author = author;
+        var suffix = options.gzip() ? ".gz" : "";
+        this.out = new BufferedWriter(new OutputStreamWriter(
+                FixExportWriter.open(Path.of(fileName + "-fixes.mbox" + suffix), options),
+                StandardCharsets.UTF_8));
+    }
+
+    void write(Issue issue, IssueAndFix issueCodeFix) throws IOException {
+        if (!issue.getComponent().equals(component)) {
+            writePatch();
+            component = issue.getComponent();
+            patch = new FilePatch(getFileFromComponent(component),
+                    sourceService.getSourceFile(connection, component));
+            body = new StringBuilder();
+        }
+        if (!patch.add(issueCodeFix.fix())) {
+            LOGGER.warn("The AI fix of issue {} overlaps another fix of {} or is out of it, it is left out",
+                    issue.getKey(), component);
+            return;
+        }
+        body.append('\n').append(issue.getRule()).append(": ")
+                .append(connection.issueLink(issue.getProject(), issue.getKey())).append('\n');
+        var explanation = issueCodeFix.fix().explanation();
+        if (explanation != null && !explanation.isBlank()) {
+            // indented, so that no line of it is taken for the start of the diff or of the next message
+            explanation.lines().forEach(line -> body.append("    ").append(line).append('\n'));
+        }
+        written++;
+    }
+
+    /**
+     * The number of fixes written to the patches so far.
+     */
+    int written() {
+        return written;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (out) {
+            writePatch();
+        }
+    }
+
+    private void writePatch() throws IOException {
+        if (patch == null || patch.isEmpty()) {
+            return;
+        }
+        var fixes = patch.fixes().size();
+        out.append(SEPARATOR);
+        out.append("From: ").append(author).append('\n');
+        out.append("Date: ").append(date).append('\n');
+        out.append("Subject: [PATCH] Fix ").append(String.valueOf(fixes)).append(fixes == 1 ? " issue" : " issues")
+                .append(" in ").append(patch.path()).append('\n');
+        out.append("MIME-Version: 1.0\n");
+        out.append("Content-Type: text/plain; charset=UTF-8\n");
+        out.append("Content-Transfer-Encoding: 8bit\n");
+        out.append('\n');
+        out.append("AI fixes generated by SonarQube.\n");
+        out.append(body);
+        out.append("---\n");
+        patch.writeDiff(out);
+        out.append("-- \n");
+        out.append("bulk-fix\n\n");
+    }
+
+    private static String getFileFromComponent(String component) {
+        return component.substring(component.indexOf(":") + 1);
+    }
+}
@@ -0,0 +1,229 @@
+package org.vilojona.services;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonarqube.ws.Components.Component;
+import org.sonarqube.ws.Issues.Issue;
+import org.sonarqube.ws.client.components.SearchRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Scans every project of a SonarQube server at once, for the issues of a
+ * severity and folder that have an AI fix.
+ *
+ * At most {@code parallel-projects} projects are scanned at the same time,
+ * the others waiting in line, and all of them share one budget of fix
+ * availability probes in flight, handed out fairly so that a huge project
+ * does not starve the small ones scanned alongside it. A project that cannot
+ * be scanned is reported as failed without stopping the others.
+ */
+@Service
+public class PortfolioScanService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PortfolioScanService.class);
+
+    /**
+     * What the file names of a portfolio export use in place of a project key.
+     */
+    public static final String ALL_PROJECTS = "all-projects";
+
+    private static final String PROJECT_QUALIFIER = "TRK";
+    private static final int SEARCH_PAGE_SIZE = 500;
+
+    private final SonarQubeClients clients;
+    private final IssueScanService issueScanService;
+    private final ApiMetrics metrics;
+    private final int parallelProjects;
+    private final int maxProbesInFlight;
+
+    public PortfolioScanService(SonarQubeClients clients, IssueScanService issueScanService, ApiMetrics metrics,
+            @Value("${bulkfix.portfolio.parallel-projects:4}") int parallelProjects,
+            @Value("${bulkfix.portfolio.max-probes-in-flight:32}") int maxProbesInFlight) {
+        this.clients = clients;
+        this.issueScanService = issueScanService;
+        this.metrics = metrics;
+        this.parallelProjects = parallelProjects;
+        this.maxProbesInFlight = maxProbesInFlight;
+    }
+
+    /**
+     * Returns the keys of all the projects the user of the connection can
+     * browse, sorted.
+     */
+    public List<String> listProjects(SonarQubeConnection connection) {
+        var wsClient = clients.wsClient(connection);
+        var projects = new ArrayList<String>();
+        var page = 1;
+        while (true) {
+            var searchRequest = new SearchRequest()
+                    .setQualifiers(List.of(PROJECT_QUALIFIER))
+                    .setP(String.valueOf(page++))
+                    .setPs(String.valueOf(SEARCH_PAGE_SIZE));
+            var response = metrics.observeUnchecked(ApiMetrics.Call.PROJECT_SEARCH, null,
+                    () -> wsClient.components().search(searchRequest));
+            response.getComponentsList().stream().map(Component::getKey).forEach(projects::add);
+            if (response.getComponentsCount() == 0 || projects.size() >= response.getPaging().getTotal()) {
+                return projects.stream().sorted().toList();
+            }
+        }
+    }
+
+    /**
+     * Scans all the projects for the issues of the severity and folder, both
+     * optional, that have an AI fix, and returns them in
+     * {@link IssueScanService#ISSUE_ORDER}.
+     *
+     * The listener is told about the projects once they are listed, then about
+     * the progress of each project along with that of the whole portfolio. It
+     * is never called concurrently. The scan stops when the calling thread is
+     * interrupted.
+     */
+    public List<Issue> scan(SonarQubeConnection connection, String severity, String folder, boolean incremental,
+            CallStats stats, PortfolioListener listener) throws InterruptedException {
+        var projects = listProjects(connection);
+        var portfolio = new Portfolio(projects, listener);
+        LOGGER.info("Scanning {} projects of {}", projects.size(), connection.host());
+
+        var probeBudget = new Semaphore(maxProbesInFlight, true);
+        var queue = new ConcurrentLinkedQueue<>(projects);
+        var executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            var workers = new ArrayList<Future<?>>();
+            for (var i = 0; i < Math.min(parallelProjects, projects.size()); i++) {
+                workers.add(executor.submit(() -> {
+                    for (var project = queue.poll(); project != null; project = queue.poll()) {
+                        scanProject(connection, new IssueQuery(project, severity, folder), incremental, stats,
+                                probeBudget, portfolio);
+                    }
+                    return null;
+                }));
+            }
+            for (var worker : workers) {
+                worker.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Portfolio scan failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return portfolio.issuesWithAIFix();
+    }
+
+    private void scanProject(SonarQubeConnection connection, IssueQuery query, boolean incremental, CallStats stats,
+            Semaphore probeBudget, Portfolio portfolio) throws InterruptedException {
+        portfolio.update(new ProjectScan(query.project(), ProjectScan.Status.SCANNING, ProjectScan.NO_PROGRESS,
+                null), List.of());
+        try {
+            var issuesWithAIFix = issueScanService.scan(connection, query, incremental, stats, probeBudget,
+                    (progress, newIssuesWithAIFix) -> portfolio.update(
+                            new ProjectScan(query.project(), ProjectScan.Status.SCANNING, progress, null),
+                            newIssuesWithAIFix));
+            portfolio.completed(query.project(), issuesWithAIFix);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not scan project {}", query.project(), e);
+            portfolio.failed(query.project(), e.getMessage());
+        }
+    }
+
+    /**
+     * The projects being scanned and the issues with an AI fix of those already
+     * scanned, updated by all the project scans.
+     */
+    private static final class Portfolio {
+
+        private final PortfolioListener listener;
+        private final Map<String, ProjectScan> projects = new LinkedHashMap<>();
+        private final List<Issue> issuesWithAIFix = new ArrayList<>();
+
+        Portfolio(List<String> keys, PortfolioListener listener) {
+            this.listener = listener;
+            keys.forEach(key -> projects.put(key,
+                    new ProjectScan(key, ProjectScan.Status.QUEUED, ProjectScan.NO_PROGRESS, null)));
+            listener.onProjects(List.copyOf(projects.values()));
+        }
+
+        synchronized void update(ProjectScan project, List<Issue> newIssuesWithAIFix) {
+            projects.put(project.project(), project);
+            listener.onProgress(project, progress(), newIssuesWithAIFix);
+        }
+
+        synchronized void completed(String project, List<Issue> projectIssuesWithAIFix) {
+            var progress = projects.get(project).progress();
+            var done = new ProjectScan(project, ProjectScan.Status.DONE, new ScanProgress(progress.total(),
+                    progress.total(), progress.matching(), projectIssuesWithAIFix.size()), null);
+            projects.put(project, done);
+            issuesWithAIFix.addAll(projectIssuesWithAIFix);
+            listener.onProgress(done, progress(), List.of());
+        }
+
+        synchronized void failed(String project, String failure) {
+            var failed = new ProjectScan(project, ProjectScan.Status.FAILED, projects.get(project).progress(), failure);
+            projects.put(project, failed);
+            listener.onProgress(failed, progress(), List.of());
+        }
+
+        synchronized List<Issue> issuesWithAIFix() {
+            return issuesWithAIFix.stream().sorted(IssueScanService.ISSUE_ORDER).toList();
+        }
+
+        private ScanProgress progress() {
+            long total = 0;
+            long scanned = 0;
+            long matching = 0;
+            long withAIFix = 0;
+            for (var project : projects.values()) {
+                total += project.progress().total();
+                scanned += project.progress().scanned();
+                matching += project.progress().matching();
+                withAIFix += project.progress().withAIFix();
+            }
+            return new ScanProgress(total, scanned, matching, withAIFix);
+        }
+    }
+
+    /**
+     * Where the scan of a project of the portfolio stands.
+     */
+    public record ProjectScan(
+        String project,
+        Status status,
+        ScanProgress progress,
+        String failure
+    ) {
+
+        static final ScanProgress NO_PROGRESS = new ScanProgress(0, 0, 0, 0);
+
+        public enum Status {
+            QUEUED,
+            SCANNING,
+            DONE,
+            FAILED
+        }
+    }
+
+    public interface PortfolioListener {
+
+        /**
+         * Called once the projects to scan are known, before any is scanned.
+         */
+        default void onProjects(List<ProjectScan> projects) {
+        }
+
+        /**
+         * Called when the scan of a project progresses, with the progress of the
+         * whole portfolio and the issues with an AI fix found since last time.
+         */
+        void onProgress(ProjectScan project, ScanProgress portfolioProgress, List<Issue> newIssuesWithAIFix);
+    }
+}
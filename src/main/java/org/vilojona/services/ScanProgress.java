@@ -0,0 +1,14 @@
+package org.vilojona.services;
+
+/**
+ * How far a scan has got: the issues of the project, how many have been
+ * scanned, how many of those match the query and how many of those have an AI
+ * fix.
+ */
+public record ScanProgress(
+    long total,
+    long scanned,
+    long matching,
+    long withAIFix
+) {
+}
@@ -0,0 +1,105 @@
+package org.vilojona.services;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.sonarqube.ws.Issues.Issue;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.vilojona.data.ScanSnapshot;
+import org.vilojona.data.ScanSnapshotRepository;
+import org.vilojona.data.SnapshotIssue;
+import org.vilojona.data.SnapshotIssueRepository;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Keeps, in the local database, the issues found by the last scan of each
+ * query, so that the next scan only has to look at the issues changed since.
+ */
+@Service
+public class ScanSnapshotService {
+
+    private final ScanSnapshotRepository snapshotRepository;
+    private final SnapshotIssueRepository issueRepository;
+
+    public ScanSnapshotService(ScanSnapshotRepository snapshotRepository, SnapshotIssueRepository issueRepository) {
+        this.snapshotRepository = snapshotRepository;
+        this.issueRepository = issueRepository;
+    }
+
+    public static String snapshotId(SonarQubeConnection connection, IssueQuery query) {
+        var key = connection.url() + "|" + query.project() + "|" + query.severity() + "|" + query.folder();
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * Returns when the last complete scan of the query started, if there is one.
+     */
+    public Optional<Instant> lastScanStartedAt(SonarQubeConnection connection, IssueQuery query) {
+        return snapshotRepository.findById(snapshotId(connection, query)).map(ScanSnapshot::getScanStartedAt);
+    }
+
+    /**
+     * Forgets the issues of the last scan before a new full scan records its own.
+     */
+    @Transactional
+    public void startFullScan(SonarQubeConnection connection, IssueQuery query) {
+        var id = snapshotId(connection, query);
+        issueRepository.deleteBySnapshotId(id);
+        snapshotRepository.save(new ScanSnapshot(id, connection.url(), query.project(), query.severity(),
+                query.folder()));
+    }
+
+    /**
+     * Records probed issues: they replace any previous version of the same
+     * issues.
+     */
+    @Transactional
+    public void record(SonarQubeConnection connection, IssueQuery query, List<Issue> probedIssues,
+            List<Issue> issuesWithAIFix) {
+        var id = snapshotId(connection, query);
+        var withAIFix = new HashSet<String>();
+        issuesWithAIFix.forEach(issue -> withAIFix.add(issue.getKey()));
+        issueRepository.saveAll(probedIssues.stream()
+                .map(issue -> new SnapshotIssue(id, issue.getKey(), withAIFix.contains(issue.getKey()),
+                        issue.toByteArray()))
+                .toList());
+    }
+
+    @Transactional
+    public void remove(SonarQubeConnection connection, IssueQuery query, Collection<String> issueKeys) {
+        var id = snapshotId(connection, query);
+        issueRepository.deleteAllByIdInBatch(issueKeys.stream().map(key -> SnapshotIssue.id(id, key)).toList());
+    }
+
+    @Transactional
+    public void scanCompleted(SonarQubeConnection connection, IssueQuery query, Instant scanStartedAt) {
+        snapshotRepository.findById(snapshotId(connection, query))
+                .ifPresent(snapshot -> snapshot.setScanStartedAt(scanStartedAt));
+    }
+
+    public long countIssues(SonarQubeConnection connection, IssueQuery query) {
+        return issueRepository.countBySnapshotId(snapshotId(connection, query));
+    }
+
+    public List<Issue> issuesWithAIFix(SonarQubeConnection connection, IssueQuery query) {
+        return issueRepository.findBySnapshotIdAndAiFixAvailableTrue(snapshotId(connection, query)).stream()
+                .map(ScanSnapshotService::parse)
+                .sorted(IssueScanService.ISSUE_ORDER)
+                .toList();
+    }
+
+    private static Issue parse(SnapshotIssue snapshotIssue) {
+        try {
+            return Issue.parseFrom(snapshotIssue.getIssue());
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalStateException("Corrupted issue " + snapshotIssue.getId() + " in scan snapshot", e);
+        }
+    }
+}
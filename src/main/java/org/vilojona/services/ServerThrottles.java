@@ -0,0 +1,78 @@
+package org.vilojona.services;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Hands out the {@link EndpointThrottle} of every endpoint of every SonarQube
+ * server, shared by all the scans, exports and sessions talking to it, so
+ * that together they do not send it more than it can take. The throttles of
+ * a server no longer called are forgotten, along with what they learned.
+ */
+@Service
+public class ServerThrottles {
+
+    private final Settings settings;
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, EndpointThrottle>> throttlesByServer =
+            new ConcurrentHashMap<>();
+
+    public ServerThrottles(@Value("${bulkfix.throttle.initial-limit:8}") int initialLimit,
+            @Value("${bulkfix.throttle.min-limit:1}") int minLimit,
+            @Value("${bulkfix.throttle.max-limit:64}") int maxLimit,
+            @Value("${bulkfix.throttle.latency-tolerance:3}") double latencyTolerance,
+            @Value("${bulkfix.throttle.failure-threshold:5}") int failureThreshold,
+            @Value("${bulkfix.throttle.open-duration:30s}") Duration openDuration,
+            @Value("${bulkfix.throttle.max-wait:2m}") Duration maxWait) {
+        this.settings = new Settings(initialLimit, Math.max(1, minLimit), maxLimit, latencyTolerance,
+                failureThreshold, openDuration, maxWait);
+    }
+
+    EndpointThrottle throttle(SonarQubeConnection connection, String endpoint) {
+        return throttlesByServer.computeIfAbsent(connection.url(), url -> new ConcurrentHashMap<>())
+                .computeIfAbsent(endpoint, name -> new EndpointThrottle(name, settings));
+    }
+
+    /**
+     * Forgets the throttles not used since the given {@link System#nanoTime()}.
+     */
+    void forgetIdle(long since) {
+        throttlesByServer.values()
+                .forEach(throttles -> throttles.values().removeIf(throttle -> throttle.isIdleSince(since)));
+        throttlesByServer.values().removeIf(Map::isEmpty);
+    }
+
+    public List<ThrottleStats> stats() {
+        return throttlesByServer.entrySet().stream()
+                .flatMap(server -> server.getValue().values().stream().map(throttle -> throttle.stats(server.getKey())))
+                .toList();
+    }
+
+    record Settings(
+        int initialLimit,
+        int minLimit,
+        int maxLimit,
+        double latencyTolerance,
+        int failureThreshold,
+        Duration openDuration,
+        Duration maxWait
+    ) {
+    }
+
+    /**
+     * Where the throttle of an endpoint stands: how many requests it lets in
+     * flight at most, how many are, and whether its circuit is open.
+     */
+    public record ThrottleStats(
+        String server,
+        String endpoint,
+        int limit,
+        int inFlight,
+        String circuit
+    ) {
+    }
+}
@@ -0,0 +1,100 @@
+package org.vilojona.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Writes the AI fix sent to SonarLint, as the JSON of a
+ * {@link SonarLintSuggestion}, straight from the fix and the source file.
+ *
+ * The lines each change replaces are copied from the source into one buffer
+ * reused by all the changes of the fix, rather than into strings, and the
+ * JSON is written to the bytes the request sends as they are, without going
+ * through a string first.
+ */
+final class SonarLintPayloadWriter {
+
+    // field names and punctuation of the payload, and of each change
+    private static final int PAYLOAD_OVERHEAD = 96;
+    private static final int CHANGE_OVERHEAD = 96;
+
+    private final JsonFactory jsonFactory;
+
+    SonarLintPayloadWriter(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    Payload write(AISuggestion fix, SourceFile sourceFile, String path) throws IOException {
+        var beforeLength = 0;
+        var textLength = fix.explanation().length() + path.length() + fix.id().length();
+        for (var change : fix.changes()) {
+            var length = beforeLength(sourceFile, change);
+            beforeLength = Math.max(beforeLength, length);
+            textLength += length + change.newCode().length();
+        }
+
+        // room for escaped characters too, so that the buffer seldom has to grow
+        var payload = new Payload(PAYLOAD_OVERHEAD + CHANGE_OVERHEAD * fix.changes().size() + textLength
+                + textLength / 8);
+        var before = new char[beforeLength];
+        try (var generator = jsonFactory.createGenerator(payload, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeStringField("explanation", fix.explanation());
+            generator.writeObjectFieldStart("fileEdit");
+            generator.writeArrayFieldStart("changes");
+            for (var change : fix.changes()) {
+                generator.writeStartObject();
+                generator.writeStringField("after", change.newCode());
+                var length = beforeLength(sourceFile, change);
+                if (length > 0) {
+                    var start = sourceFile.lineStart(change.startLine());
+                    sourceFile.text().getChars(start, start + length, before, 0);
+                }
+                generator.writeFieldName("before");
+                generator.writeString(before, 0, length);
+                generator.writeObjectFieldStart("beforeLineRange");
+                generator.writeNumberField("startLine", change.startLine());
+                generator.writeNumberField("endLine", change.endLine());
+                generator.writeEndObject();
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeStringField("path", path);
+            generator.writeEndObject();
+            generator.writeStringField("suggestionId", fix.id());
+            generator.writeEndObject();
+        }
+        return payload;
+    }
+
+    /**
+     * The length of the lines the change replaces, none for an insertion.
+     */
+    private static int beforeLength(SourceFile sourceFile, AISuggestion.Change change) {
+        sourceFile.checkLines(change.startLine(), change.endLine());
+        if (change.endLine() < change.startLine()) {
+            return 0;
+        }
+        return sourceFile.lineEnd(change.endLine()) - sourceFile.lineStart(change.startLine());
+    }
+
+    /**
+     * The bytes of a payload, sent without copying them.
+     */
+    static final class Payload extends ByteArrayOutputStream {
+
+        Payload(int size) {
+            super(size);
+        }
+
+        BodyPublisher bodyPublisher() {
+            return BodyPublishers.ofByteArray(buf, 0, count);
+        }
+    }
+}
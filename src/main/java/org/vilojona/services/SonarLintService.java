@@ -0,0 +1,215 @@
+package org.vilojona.services;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonarqube.ws.Issues.Issue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Sends AI fixes to SonarLint, in the IDE that has the project open, through
+ * its local API.
+ *
+ * SonarLint listens on one of the ports 64120 to 64130. They are all probed at
+ * once with a short timeout, and the port found is kept for the project until
+ * sending to it fails. The fixes of a batch are sent concurrently, and the
+ * status of each one is reported as soon as it is known.
+ */
+@Service
+public class SonarLintService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SonarLintService.class);
+    private static final String SONARLINT_API_STATUS = "/sonarlint/api/status";
+    private static final String SONARLINT_API_FIX = "/sonarlint/api/fix/show";
+    private static final int SONARLINT_API_INITIAL_PORT = 64120;
+    private static final int SONARLINT_API_FINAL_PORT = 64130;
+
+    private final SonarQubeClients clients;
+    private final AISuggestionService aiSuggestionService;
+    private final SourceService sourceService;
+    private final ObjectMapper objectMapper;
+    private final SonarLintPayloadWriter payloadWriter;
+    private final Duration probeTimeout;
+    private final int maxInFlight;
+    private final ApiMetrics metrics;
+    private final ConcurrentHashMap<String, Integer> portsByProject = new ConcurrentHashMap<>();
+
+    public SonarLintService(SonarQubeClients clients, AISuggestionService aiSuggestionService,
+            SourceService sourceService, ObjectMapper objectMapper, ApiMetrics metrics,
+            @Value("${bulkfix.sonarlint.probe-timeout:1s}") Duration probeTimeout,
+            @Value("${bulkfix.sonarlint.max-in-flight:4}") int maxInFlight) {
+        this.clients = clients;
+        this.aiSuggestionService = aiSuggestionService;
+        this.sourceService = sourceService;
+        this.objectMapper = objectMapper;
+        this.payloadWriter = new SonarLintPayloadWriter(objectMapper);
+        this.probeTimeout = probeTimeout;
+        this.maxInFlight = maxInFlight;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sends the AI fixes of the issues to SonarLint and returns how many it
+     * accepted. The fixes it accepted are appended, one JSON per line, to the
+     * applied fixes file.
+     *
+     * @throws IOException when no SonarLint has the project open
+     */
+    public int sendFixes(SonarQubeConnection connection, String project, String branch, List<Issue> issues,
+            Path appliedFixesFile, DeliveryListener listener) throws IOException, InterruptedException {
+        var port = findPort(connection, project)
+                .orElseThrow(() -> new IOException("SonarLint is not running with project " + project + " open"));
+        issues.forEach(issue -> listener.onStatus(issue, DeliveryStatus.SENDING, ""));
+
+        var inFlight = new Semaphore(maxInFlight);
+        var delivered = new AtomicInteger();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (var issue : issues) {
+                inFlight.acquire();
+                executor.execute(() -> {
+                    try {
+                        var response = sendFix(connection, port, project, branch, issue, appliedFixesFile);
+                        if (response.statusCode() == 200) {
+                            delivered.incrementAndGet();
+                            listener.onStatus(issue, DeliveryStatus.DELIVERED, response.body());
+                        } else {
+                            listener.onStatus(issue, DeliveryStatus.FAILED,
+                                    "SonarLint answered " + response.statusCode() + ": " + response.body());
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        LOGGER.warn("Could not send the AI fix of issue {} to SonarLint", issue.getKey(), e);
+                        listener.onStatus(issue, DeliveryStatus.FAILED, String.valueOf(e.getMessage()));
+                    } catch (InterruptedException e) {
+                        listener.onStatus(issue, DeliveryStatus.FAILED, "Cancelled");
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+        return delivered.get();
+    }
+
+    /**
+     * Returns the port of the SonarLint that has the project open, probing all
+     * the ports unless it is already known.
+     */
+    public OptionalInt findPort(SonarQubeConnection connection, String project) throws InterruptedException {
+        var known = portsByProject.get(portKey(connection, project));
+        if (known != null) {
+            return OptionalInt.of(known);
+        }
+
+        var probes = IntStream.rangeClosed(SONARLINT_API_INITIAL_PORT, SONARLINT_API_FINAL_PORT)
+                .mapToObj(port -> hasProjectOpen(connection, project, port))
+                .toList();
+        for (var i = 0; i < probes.size(); i++) {
+            if (await(probes.get(i))) {
+                var port = SONARLINT_API_INITIAL_PORT + i;
+                portsByProject.put(portKey(connection, project), port);
+                return OptionalInt.of(port);
+            }
+        }
+        return OptionalInt.empty();
+    }
+
+    private CompletableFuture<Boolean> hasProjectOpen(SonarQubeConnection connection, String project, int port) {
+        var request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + SONARLINT_API_STATUS))
+                .GET()
+                .header("Origin", connection.url())
+                .header("Referer", connection.url())
+                .timeout(probeTimeout)
+                .build();
+        return clients.sonarLintHttpClient().sendAsync(request, BodyHandlers.ofString())
+                .thenApply(response -> response.statusCode() == 200
+                        && response.body().toLowerCase().contains("- " + project.toLowerCase()))
+                .exceptionally(e -> false);
+    }
+
+    private static boolean await(CompletableFuture<Boolean> probe) throws InterruptedException {
+        try {
+            return probe.get();
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    private HttpResponse<String> sendFix(SonarQubeConnection connection, int port, String project, String branch,
+            Issue issue, Path appliedFixesFile) throws IOException, InterruptedException {
+        var issueCodeFix = aiSuggestionService.fetchAiSuggestionsForIssue(connection, issue).fix();
+        var sourceFile = sourceService.getSourceFile(connection, issue.getComponent());
+        var payload = payloadWriter.write(issueCodeFix, sourceFile, getFileFromComponent(issue.getComponent()));
+
+        var uri = URI.create("http://localhost:" + port + SONARLINT_API_FIX +
+                "?server=" + URLEncoder.encode(connection.url(), StandardCharsets.UTF_8) +
+                "&project=" + URLEncoder.encode(project, StandardCharsets.UTF_8) +
+                "&issue=" + issueCodeFix.issueId() +
+                "&branch=" + URLEncoder.encode(branch, StandardCharsets.UTF_8));
+        var request = HttpRequest.newBuilder()
+                .uri(uri)
+                .POST(payload.bodyPublisher())
+                .build();
+        try {
+            var response = metrics.observe(ApiMetrics.Call.SONARLINT_FIX, null,
+                    () -> clients.sonarLintHttpClient().send(request, BodyHandlers.ofString()));
+            LOGGER.debug("SonarLint answered {} to the AI fix of issue {}: {}", response.statusCode(),
+                    issue.getKey(), response.body());
+            if (response.statusCode() == 200) {
+                writeAppliedFix(appliedFixesFile, issueCodeFix);
+            }
+            return response;
+        } catch (IOException e) {
+            // SonarLint is gone from this port, look for it again next time
+            portsByProject.remove(portKey(connection, project), port);
+            throw e;
+        }
+    }
+
+    private synchronized void writeAppliedFix(Path appliedFixesFile, AISuggestion issueCodeFix) throws IOException {
+        Files.writeString(appliedFixesFile, objectMapper.writeValueAsString(issueCodeFix) + System.lineSeparator(),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static String portKey(SonarQubeConnection connection, String project) {
+        return connection.url() + "|" + project;
+    }
+
+    private static String getFileFromComponent(String component) {
+        return component.substring(component.indexOf(":") + 1);
+    }
+
+    public enum DeliveryStatus {
+        SENDING,
+        DELIVERED,
+        FAILED
+    }
+
+    @FunctionalInterface
+    public interface DeliveryListener {
+        void onStatus(Issue issue, DeliveryStatus status, String message);
+    }
+}
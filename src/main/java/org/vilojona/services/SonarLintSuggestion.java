@@ -1,7 +1,11 @@
-package org.vilojona.views.bulk;
+package org.vilojona.services;
 
 import java.util.List;
 
+/**
+ * An AI fix as SonarLint takes it, with the lines of the source each change
+ * replaces. Written by {@link SonarLintPayloadWriter} without building it.
+ */
 public record SonarLintSuggestion(
     String explanation,
     FileEdit fileEdit,
@@ -0,0 +1,297 @@
+package org.vilojona.services;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonarqube.ws.client.HttpConnector;
+import org.sonarqube.ws.client.WsClient;
+import org.sonarqube.ws.client.WsClientFactories;
+import org.sonarqube.ws.client.WsConnector;
+import org.sonarqube.ws.client.WsRequest;
+import org.sonarqube.ws.client.WsResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Hands out the HTTP clients used to talk to SonarQube, one set per server and
+ * credentials, shared by every scan, export and session.
+ *
+ * Reusing the clients keeps connections alive between requests instead of
+ * opening and handshaking a new one every time. The JDK client negotiates
+ * HTTP/2 where the server supports it. Both clients count the requests they
+ * send so that the pools can be monitored, and go through the
+ * {@link EndpointThrottle} of the endpoint called so as not to overload the
+ * server. The clients of a server and credentials that have not been used for
+ * {@code idle-timeout} are closed, as every URL, user or password typed in
+ * gets its own.
+ */
+@Service
+public class SonarQubeClients {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SonarQubeClients.class);
+    private static final String RETRY_AFTER = "Retry-After";
+
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+    private final Duration idleTimeout;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ConcurrentHashMap<SonarQubeConnection, Clients> clientsByConnection = new ConcurrentHashMap<>();
+    private final HttpClient sonarLintHttpClient;
+    private final ServerThrottles throttles;
+
+    public SonarQubeClients(ServerThrottles throttles,
+            @Value("${bulkfix.http.connect-timeout:10s}") Duration connectTimeout,
+            @Value("${bulkfix.http.read-timeout:60s}") Duration readTimeout,
+            @Value("${bulkfix.http.idle-timeout:10m}") Duration idleTimeout,
+            @Value("${bulkfix.sonarlint.connect-timeout:500ms}") Duration sonarLintConnectTimeout) {
+        this.throttles = throttles;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.idleTimeout = idleTimeout;
+        this.sonarLintHttpClient = HttpClient.newBuilder()
+                .connectTimeout(sonarLintConnectTimeout)
+                .executor(executor)
+                .build();
+    }
+
+    public WsClient wsClient(SonarQubeConnection connection) {
+        return clients(connection).wsClient();
+    }
+
+    /**
+     * Sends the request once the throttle of the call lets it, waiting for it.
+     *
+     * @throws IOException when the server stays overloaded for too long
+     */
+    public <T> HttpResponse<T> send(SonarQubeConnection connection, ApiMetrics.Call call, HttpRequest request,
+            BodyHandler<T> handler) throws IOException, InterruptedException {
+        var throttle = throttles.throttle(connection, call.tagValue());
+        var permit = throttle.acquire();
+        var clients = clients(connection);
+        clients.started();
+        var outcome = EndpointThrottle.Outcome.FAILED;
+        String retryAfter = null;
+        try {
+            var response = clients.httpClient().send(request, handler);
+            outcome = EndpointThrottle.Outcome.of(response.statusCode());
+            retryAfter = response.headers().firstValue(RETRY_AFTER).orElse(null);
+            return response;
+        } catch (InterruptedException e) {
+            outcome = EndpointThrottle.Outcome.CANCELLED;
+            throw e;
+        } finally {
+            clients.finished();
+            throttle.release(permit, outcome, retryAfter);
+        }
+    }
+
+    /**
+     * Sends the request once the throttle of the call lets it, waiting for it
+     * on the calling thread.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(SonarQubeConnection connection, ApiMetrics.Call call,
+            HttpRequest request, BodyHandler<T> handler) {
+        var throttle = throttles.throttle(connection, call.tagValue());
+        EndpointThrottle.Permit permit;
+        try {
+            permit = throttle.acquire();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        var clients = clients(connection);
+        clients.started();
+        return clients.httpClient().sendAsync(request, handler).whenComplete((response, e) -> {
+            clients.finished();
+            if (response != null) {
+                throttle.release(permit, EndpointThrottle.Outcome.of(response.statusCode()),
+                        response.headers().firstValue(RETRY_AFTER).orElse(null));
+            } else {
+                throttle.release(permit, e instanceof CancellationException ? EndpointThrottle.Outcome.CANCELLED
+                        : EndpointThrottle.Outcome.FAILED, null);
+            }
+        });
+    }
+
+    /**
+     * The client used to talk to SonarLint, listening on localhost in the IDE.
+     */
+    public HttpClient sonarLintHttpClient() {
+        return sonarLintHttpClient;
+    }
+
+    public List<PoolStats> stats() {
+        return clientsByConnection.entrySet().stream()
+                .map(entry -> entry.getValue().stats(entry.getKey().url()))
+                .toList();
+    }
+
+    @Scheduled(fixedDelayString = "${bulkfix.http.stats-interval:PT1M}")
+    public void logStats() {
+        stats().forEach(stats -> LOGGER.debug("{}", stats));
+        throttles.stats().forEach(stats -> LOGGER.debug("{}", stats));
+    }
+
+    /**
+     * Closes the clients, and forgets the throttles, that have not been used for
+     * {@code idle-timeout}.
+     */
+    @Scheduled(fixedDelayString = "${bulkfix.http.stats-interval:PT1M}")
+    public void closeIdleClients() {
+        var idleSince = System.nanoTime() - idleTimeout.toNanos();
+        clientsByConnection.forEach((connection, clients) -> {
+            if (clients.isIdleSince(idleSince) && clientsByConnection.remove(connection, clients)) {
+                LOGGER.debug("Closing the idle clients of {}", connection.url());
+                clients.close();
+            }
+        });
+        throttles.forgetIdle(idleSince);
+    }
+
+    @PreDestroy
+    public void close() {
+        clientsByConnection.values().forEach(Clients::close);
+        sonarLintHttpClient.close();
+        executor.shutdownNow();
+    }
+
+    private Clients clients(SonarQubeConnection connection) {
+        return clientsByConnection.computeIfAbsent(connection, this::newClients);
+    }
+
+    private Clients newClients(SonarQubeConnection connection) {
+        var httpConnector = HttpConnector.newBuilder()
+                .url(connection.url())
+                .credentials(connection.user(), connection.password())
+                .connectTimeoutMilliseconds((int) connectTimeout.toMillis())
+                .readTimeoutMilliseconds((int) readTimeout.toMillis())
+                .build();
+        var httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .executor(executor)
+                .build();
+        return new Clients(httpConnector, httpClient, path -> throttles.throttle(connection, path));
+    }
+
+    /**
+     * What the clients of one server have done so far: the requests sent, those
+     * still waiting for a response, and the connections kept open by the web
+     * service client.
+     */
+    public record PoolStats(
+        String server,
+        long requests,
+        int inFlight,
+        int openConnections,
+        int idleConnections
+    ) {
+    }
+
+    private static final class Clients {
+
+        private final HttpConnector httpConnector;
+        private final WsClient wsClient;
+        private final HttpClient httpClient;
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile long lastUsedAt = System.nanoTime();
+
+        Clients(HttpConnector httpConnector, HttpClient httpClient, Function<String, EndpointThrottle> throttles) {
+            this.httpConnector = httpConnector;
+            this.httpClient = httpClient;
+            this.wsClient = WsClientFactories.getDefault().newClient(new WsConnector() {
+                @Override
+                public String baseUrl() {
+                    return httpConnector.baseUrl();
+                }
+
+                @Override
+                public WsResponse call(WsRequest request) {
+                    var throttle = throttles.apply(request.getPath());
+                    var permit = acquire(throttle);
+                    started();
+                    var outcome = EndpointThrottle.Outcome.FAILED;
+                    String retryAfter = null;
+                    try {
+                        var response = httpConnector.call(request);
+                        outcome = EndpointThrottle.Outcome.of(response.code());
+                        retryAfter = response.header(RETRY_AFTER).orElse(null);
+                        return response;
+                    } finally {
+                        finished();
+                        throttle.release(permit, outcome, retryAfter);
+                    }
+                }
+            });
+        }
+
+        private static EndpointThrottle.Permit acquire(EndpointThrottle throttle) {
+            try {
+                return throttle.acquire();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException("Interrupted waiting for SonarQube"));
+            }
+        }
+
+        WsClient wsClient() {
+            lastUsedAt = System.nanoTime();
+            return wsClient;
+        }
+
+        HttpClient httpClient() {
+            return httpClient;
+        }
+
+        void started() {
+            lastUsedAt = System.nanoTime();
+            requests.incrementAndGet();
+            inFlight.incrementAndGet();
+        }
+
+        void finished() {
+            inFlight.decrementAndGet();
+            lastUsedAt = System.nanoTime();
+        }
+
+        boolean isIdleSince(long since) {
+            return inFlight.get() == 0 && lastUsedAt - since < 0;
+        }
+
+        PoolStats stats(String server) {
+            var pool = httpConnector.okHttpClient().connectionPool();
+            return new PoolStats(server, requests.get(), inFlight.get(), pool.connectionCount(),
+                    pool.idleConnectionCount());
+        }
+
+        void close() {
+            httpClient.close();
+            httpConnector.okHttpClient().connectionPool().evictAll();
+        }
+    }
+}
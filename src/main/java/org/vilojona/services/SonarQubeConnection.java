@@ -0,0 +1,26 @@
+package org.vilojona.services;
+
+import java.net.URI;
+import java.util.Base64;
+
+/**
+ * Coordinates of a SonarQube server and the credentials used to talk to it.
+ */
+public record SonarQubeConnection(
+    String url,
+    String user,
+    String password
+) {
+
+    public String authorization() {
+        return "Basic " + Base64.getEncoder().encodeToString((user + ":" + password).getBytes());
+    }
+
+    public String issueLink(String project, String issueKey) {
+        return url + "/project/issues?id=" + project + "&open=" + issueKey;
+    }
+
+    public String host() {
+        return URI.create(url).getAuthority();
+    }
+}
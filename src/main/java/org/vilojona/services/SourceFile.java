@@ -0,0 +1,103 @@
+package org.vilojona.services;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Objects;
+
+/**
+ * The source code of a file, indexed by line so that ranges of lines can be
+ * taken without splitting the whole file again.
+ */
+public final class SourceFile {
+
+    private final String text;
+    private final int[] lineStarts;
+    private volatile String hash;
+
+    private SourceFile(String text, int[] lineStarts) {
+        this.text = text;
+        this.lineStarts = lineStarts;
+    }
+
+    public static SourceFile of(String text) {
+        var lineCount = 1;
+        for (var i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lineCount++;
+            }
+        }
+        var lineStarts = new int[lineCount];
+        var line = 1;
+        for (var i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lineStarts[line++] = i + 1;
+            }
+        }
+        return new SourceFile(text, lineStarts);
+    }
+
+    public String text() {
+        return text;
+    }
+
+    public int lineCount() {
+        return lineStarts.length;
+    }
+
+    /**
+     * Returns the lines from {@code startLine} to {@code endLine}, both 1-based
+     * and inclusive, joined with {@code \n}.
+     */
+    public String lines(int startLine, int endLine) {
+        checkLines(startLine, endLine);
+        return text.substring(lineStarts[startLine - 1], lineEnd(endLine));
+    }
+
+    /**
+     * Returns the SHA-256 of the source code, which changes whenever the file
+     * does.
+     */
+    public String hash() {
+        if (hash == null) {
+            try {
+                var digest = MessageDigest.getInstance("SHA-256");
+                hash = HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Approximate memory held by this file.
+     */
+    public long sizeInBytes() {
+        return 2L * text.length() + 4L * lineStarts.length;
+    }
+
+    /**
+     * Checks that the lines from {@code startLine} to {@code endLine}, both
+     * 1-based and inclusive, are lines of the file.
+     */
+    void checkLines(int startLine, int endLine) {
+        Objects.checkFromToIndex(startLine - 1, endLine, lineCount());
+    }
+
+    /**
+     * Offset in the text of the first character of the line.
+     */
+    int lineStart(int line) {
+        return lineStarts[line - 1];
+    }
+
+    /**
+     * Offset in the text of the {@code \n} that ends the line, or the length of
+     * the text for the last line.
+     */
+    int lineEnd(int line) {
+        return line < lineCount() ? lineStarts[line] - 1 : text.length();
+    }
+}
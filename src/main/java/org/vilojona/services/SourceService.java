@@ -0,0 +1,128 @@
+package org.vilojona.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.sonarqube.ws.client.sources.RawRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Downloads the source code of the files the issues are in, and keeps the
+ * most recently used ones, already indexed by line, in a cache shared by all
+ * sessions.
+ *
+ * Concurrent requests for a file that is being downloaded wait for that
+ * download instead of starting another one. The cache holds at most
+ * {@code max-size} of source code, evicting the least recently used files
+ * first, and files older than {@code ttl} are downloaded again so that new
+ * analyses are picked up.
+ */
+@Service
+public class SourceService {
+
+    private final SonarQubeClients clients;
+    private final long maxSizeInBytes;
+    private final Duration timeToLive;
+    private final LinkedHashMap<SourceKey, CachedSource> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final ApiMetrics metrics;
+    private long sizeInBytes;
+
+    public SourceService(SonarQubeClients clients, ApiMetrics metrics,
+            @Value("${bulkfix.cache.sources.max-size:256MB}") DataSize maxSize,
+            @Value("${bulkfix.cache.sources.ttl:10m}") Duration timeToLive) {
+        this.clients = clients;
+        this.maxSizeInBytes = maxSize.toBytes();
+        this.timeToLive = timeToLive;
+        this.metrics = metrics;
+    }
+
+    public SourceFile getSourceFile(SonarQubeConnection connection, String component) {
+        var key = new SourceKey(connection, component);
+        CachedSource cached;
+        var download = false;
+        synchronized (cache) {
+            cached = cache.get(key);
+            if (cached == null || cached.isExpired(timeToLive)) {
+                remove(key);
+                cached = new CachedSource(new CompletableFuture<>(), Instant.now());
+                cache.put(key, cached);
+                download = true;
+            }
+        }
+
+        if (download) {
+            try {
+                loaded(key, cached, SourceFile.of(getCodeFile(connection, component)));
+            } catch (RuntimeException e) {
+                cached.sourceFile().completeExceptionally(e);
+                synchronized (cache) {
+                    cache.remove(key, cached);
+                }
+                throw e;
+            }
+        }
+
+        try {
+            return cached.sourceFile().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    public String getCodeFileHash(SonarQubeConnection connection, String component) {
+        return getSourceFile(connection, component).hash();
+    }
+
+    private String getCodeFile(SonarQubeConnection connection, String component) {
+        // Call the SonarQube API to get the source code
+        var wsClient = clients.wsClient(connection);
+        var fileCodeRequest = new RawRequest();
+        fileCodeRequest.setKey(component);
+        return new String(metrics.observeUnchecked(ApiMetrics.Call.SOURCE, null,
+                () -> wsClient.sources().raw(fileCodeRequest)).getBytes());
+    }
+
+    private void loaded(SourceKey key, CachedSource cached, SourceFile sourceFile) {
+        synchronized (cache) {
+            cached.sourceFile().complete(sourceFile);
+            if (cache.get(key) != cached) {
+                return;
+            }
+            sizeInBytes += sourceFile.sizeInBytes();
+            var eldest = cache.entrySet().iterator();
+            while (sizeInBytes > maxSizeInBytes && eldest.hasNext()) {
+                var entry = eldest.next();
+                if (entry.getValue() != cached && entry.getValue().sourceFile().isDone()) {
+                    sizeInBytes -= entry.getValue().sizeInBytes();
+                    eldest.remove();
+                }
+            }
+        }
+    }
+
+    private void remove(SourceKey key) {
+        var removed = cache.remove(key);
+        if (removed != null) {
+            sizeInBytes -= removed.sizeInBytes();
+        }
+    }
+
+    private record SourceKey(SonarQubeConnection connection, String component) {
+    }
+
+    private record CachedSource(CompletableFuture<SourceFile> sourceFile, Instant loadedAt) {
+
+        boolean isExpired(Duration timeToLive) {
+            return sourceFile.isDone() && loadedAt.plus(timeToLive).isBefore(Instant.now());
+        }
+
+        long sizeInBytes() {
+            return sourceFile.isDone() && !sourceFile.isCompletedExceptionally() ? sourceFile.join().sizeInBytes() : 0;
+        }
+    }
+}
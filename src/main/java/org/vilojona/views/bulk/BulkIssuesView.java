@@ -1,31 +1,40 @@
 package org.vilojona.views.bulk;
 
-import java.util.Collections;
 import java.util.List;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.net.http.HttpRequest.BodyPublishers;
-import java.net.http.HttpResponse.BodyHandlers;
-import java.nio.charset.StandardCharsets;
-import java.net.URI;
-import java.net.URLEncoder;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Base64;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import org.sonarqube.ws.Issues.Issue;
-import org.sonarqube.ws.Issues.SearchWsResponse;
-import org.sonarqube.ws.client.HttpConnector;
-import org.sonarqube.ws.client.WsClientFactories;
-import org.sonarqube.ws.client.issues.SearchRequest;
-import org.sonarqube.ws.client.sources.RawRequest;
-
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.vilojona.services.BulkFixService;
+import org.vilojona.services.CallStats;
+import org.vilojona.services.ExportOptions;
+import org.vilojona.services.ExportService;
+import org.vilojona.services.IssueFacetService;
+import org.vilojona.services.IssueFacetService.FacetCount;
+import org.vilojona.services.IssueFacetService.IssueFacets;
+import org.vilojona.services.IssueQuery;
+import org.vilojona.services.IssueRow;
+import org.vilojona.services.IssueScanService;
+import org.vilojona.services.IssueStore;
+import org.vilojona.services.Job;
+import org.vilojona.services.JobService;
+import org.vilojona.services.LocalPatchService;
+import org.vilojona.services.PortfolioScanService;
+import org.vilojona.services.PortfolioScanService.ProjectScan;
+import org.vilojona.services.ScanProgress;
+import org.vilojona.services.SonarLintService;
+import org.vilojona.services.SonarQubeConnection;
+
 import com.vaadin.flow.component.Key;
+import com.vaadin.flow.component.UI;
 import com.vaadin.flow.component.button.Button;
+import com.vaadin.flow.component.checkbox.Checkbox;
 import com.vaadin.flow.component.notification.Notification;
 import com.vaadin.flow.component.combobox.ComboBox;
 import com.vaadin.flow.component.dialog.Dialog;
@@ -35,40 +44,77 @@ import com.vaadin.flow.component.html.NativeLabel;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.component.textfield.TextField;
+import com.vaadin.flow.data.provider.QuerySortOrder;
+import com.vaadin.flow.data.provider.SortDirection;
+import com.vaadin.flow.data.value.ValueChangeMode;
 import com.vaadin.flow.router.Menu;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
+import com.vaadin.flow.server.VaadinSession;
 
 @PageTitle("Bulk Issues")
 @Route("")
 @Menu(order = 0, icon = "line-awesome/svg/globe-solid.svg")
 public class BulkIssuesView extends VerticalLayout {
 
-    private static final String API_V2_FIX_SUGGESTIONS_AI_SUGGESTIONS = "/api/v2/fix-suggestions/ai-suggestions/";
-    private static final String API_V2_FIX_SUGGESTIONS_ISSUES = "/api/v2/fix-suggestions/issues/";
-    private static final String SONARLINT_API_FIX = "/sonarlint/api/fix/show";
-    private static final int SONARLINT_API_INITIAL_PORT = 64120;
-    private static final int SONARLINT_API_FINAL_PORT = 64130;
     private TextField projectEdit;
+    private Checkbox allProjectsCheckbox;
     private Button getIssuesButton;
     private ComboBox<String> severityCombo;
     private NativeLabel numberOfIssuesFilteredWithAIFixLabel;
     private NativeLabel numberOfIssuesFilteredLabel;
+    private NativeLabel scanProgressLabel;
+    private NativeLabel scanTimingsLabel;
     private HorizontalLayout sonarqubePanel;
     private TextField sonarqubeUrlEdit;
     private TextField sonarqubeUserEdit;
     private TextField sonarqubePasswordEdit;
     private TextField branchEdit;
-    private Grid<Issue> issuesGrid;
+    private Grid<IssueRow> issuesGrid;
     private TextField folderEdit;
     private Button applyFixesButton;
-    private List<Issue> issuesWithCodeFixList;
+    private TextField checkoutEdit;
+    private Button applyLocallyButton;
+    private Button cancelScanButton;
+    private Checkbox incrementalCheckbox;
+    private IssueStore issuesWithCodeFix = new IssueStore();
+    private TextField projectFilterEdit;
+    private ComboBox<String> severityFilterCombo;
+    private TextField ruleFilterEdit;
+    private TextField fileFilterEdit;
+    private Job scanJob;
+    private Grid<Job> jobsGrid;
+    private Grid<ProjectScan> projectsGrid;
+    private Grid<FacetCount> facetsGrid;
+    private NativeLabel facetsLabel;
+    private IssueFacets issueFacets = IssueFacets.NONE;
+    private Job facetsJob;
+    private final Map<String, ProjectScan> projectScans = new LinkedHashMap<>();
     private TextField fileNameEdit;
-
-    record IssueAndFix(String file, String rule, AISuggestion fix) {
-    }
-
-    public BulkIssuesView() {
+    private ComboBox<ExportOptions.JsonFormat> jsonFormatCombo;
+    private Checkbox mboxCheckbox;
+    private Checkbox gzipCheckbox;
+    private final IssueScanService issueScanService;
+    private final PortfolioScanService portfolioScanService;
+    private final IssueFacetService issueFacetService;
+    private final ExportService exportService;
+    private final SonarLintService sonarLintService;
+    private final LocalPatchService localPatchService;
+    private final JobService jobService;
+    // jobs are limited per session, there being no users
+    private final String jobOwner = VaadinSession.getCurrent().getSession().getId();
+    private final Map<String, String> fixStatusByIssueKey = new HashMap<>();
+
+    public BulkIssuesView(IssueScanService issueScanService, PortfolioScanService portfolioScanService,
+            IssueFacetService issueFacetService, ExportService exportService, SonarLintService sonarLintService,
+            LocalPatchService localPatchService, JobService jobService) {
+        this.issueScanService = issueScanService;
+        this.portfolioScanService = portfolioScanService;
+        this.issueFacetService = issueFacetService;
+        this.exportService = exportService;
+        this.sonarLintService = sonarLintService;
+        this.localPatchService = localPatchService;
+        this.jobService = jobService;
 
         sonarqubePanel = new HorizontalLayout();
         sonarqubeUrlEdit = new TextField("SonarQube Server URL");
@@ -82,6 +128,8 @@ public class BulkIssuesView extends VerticalLayout {
 
         var filterPanel = new HorizontalLayout();
         projectEdit = new TextField("Project");
+        allProjectsCheckbox = new Checkbox("All Projects");
+        allProjectsCheckbox.addValueChangeListener(e -> projectEdit.setEnabled(!e.getValue()));
 
         severityCombo = new ComboBox<>("Severity");
         severityCombo.setItems("INFO", "MINOR", "MAJOR", "CRITICAL", "BLOCKER");
@@ -90,7 +138,8 @@ public class BulkIssuesView extends VerticalLayout {
         branchEdit.setValue("master");
 
         filterPanel.setMargin(true);
-        filterPanel.add(projectEdit, severityCombo, folderEdit, branchEdit);
+        filterPanel.add(projectEdit, allProjectsCheckbox, severityCombo, folderEdit, branchEdit);
+        filterPanel.setAlignItems(Alignment.BASELINE);
 
         var issuesPanel = new HorizontalLayout();
         getIssuesButton = new Button("Get Issues");
@@ -99,95 +148,206 @@ public class BulkIssuesView extends VerticalLayout {
             Notification.show("Requesting issues ");
         });
         getIssuesButton.addClickShortcut(Key.ENTER);
-        issuesPanel.add(getIssuesButton);
+        cancelScanButton = new Button("Cancel");
+        cancelScanButton.setEnabled(false);
+        cancelScanButton.addClickListener(e -> cancelScan());
+        incrementalCheckbox = new Checkbox("Only rescan changed issues", false);
+        // off by default: issues without an AI fix are not probed again unless they changed, though the server may
+        // have started offering one
+        incrementalCheckbox.setTooltipText("Issues without an AI fix are only probed again when they changed");
+        var countIssuesButton = new Button("Count Issues");
+        countIssuesButton.addClickListener(e -> countIssues());
+        issuesPanel.add(getIssuesButton, cancelScanButton, incrementalCheckbox, countIssuesButton);
+        issuesPanel.setAlignItems(Alignment.BASELINE);
 
         numberOfIssuesFilteredLabel = new NativeLabel("Total Project Issues : ");
+        scanProgressLabel = new NativeLabel("Scanned Issues : ");
         numberOfIssuesFilteredWithAIFixLabel = new NativeLabel("Total Filtered Issues and with AI Fix : ");
+        scanTimingsLabel = new NativeLabel("Scan Time : ");
 
         var exportButton = new Button("Export AI Fixes to CSV + JSON");
         exportButton.addClickListener(e -> {
             Notification.show("Exporting issues");
             exportIssuesWithCodeFix();
-            Notification.show("Exporting issues finished");
         });
 
         var openInSonarQubeButton = new Button("Open Selected Issue In SonarQube Server");
         openInSonarQubeButton.addClickListener(e -> {
-            var selectedIssue = issuesGrid.asSingleSelect().getValue();
-            if (selectedIssue != null) {
-                getUI().ifPresent(ui -> ui.getPage().open(getSonarQubeIssueLink(selectedIssue.getKey())));
+            var selectedIssue = issuesGrid.getSelectedItems().stream().findFirst();
+            if (selectedIssue.isPresent()) {
+                getUI().ifPresent(ui -> ui.getPage().open(getSonarQubeIssueLink(selectedIssue.get())));
             } else {
                 Notification.show("No issue selected");
             }
         });
 
         issuesGrid = new Grid<>();
-        issuesGrid.setSelectionMode(SelectionMode.SINGLE);
-        issuesGrid.addColumn(Issue::getProject).setHeader("Project");
-        issuesGrid.addColumn(Issue::getSeverity).setHeader("Severity");
-        issuesGrid.addColumn(Issue::getRule).setHeader("Rule");
-        issuesGrid.addColumn(Issue::getComponent).setHeader("File");
-        issuesGrid.addItemDoubleClickListener(e -> dialogIssue(issuesGrid.asSingleSelect().getValue()));
-
-        applyFixesButton = new Button("Send Selected Fix to SonarQube IDE");
-        applyFixesButton.addClickListener(e -> {
-            Notification.show("Processing fixes");
-            applyFixes();
-            Notification.show("Processing fixes finished");
-        });
+        issuesGrid.setSelectionMode(SelectionMode.MULTI);
+        var projectColumn = issuesGrid.addColumn(IssueRow::project).setHeader("Project")
+                .setSortProperty(IssueStore.Field.PROJECT.name());
+        var severityColumn = issuesGrid.addColumn(IssueRow::severity).setHeader("Severity")
+                .setSortProperty(IssueStore.Field.SEVERITY.name());
+        var ruleColumn = issuesGrid.addColumn(IssueRow::rule).setHeader("Rule")
+                .setSortProperty(IssueStore.Field.RULE.name());
+        var fileColumn = issuesGrid.addColumn(IssueRow::component).setHeader("File")
+                .setSortProperty(IssueStore.Field.FILE.name());
+        issuesGrid.addColumn(issue -> fixStatusByIssueKey.getOrDefault(issue.key(), "")).setHeader("Fix Status");
+        issuesGrid.setMultiSort(true);
+        issuesGrid.addItemDoubleClickListener(e -> dialogIssue(e.getItem()));
+        // only the window of issues the grid shows is fetched, filtered and sorted on the server
+        issuesGrid.setItems(
+                query -> issuesWithCodeFix.fetch(getIssueFilter(), getIssueSorts(query.getSortOrders()),
+                        query.getOffset(), query.getLimit()).stream(),
+                query -> issuesWithCodeFix.count(getIssueFilter()));
+
+        projectFilterEdit = filterEdit();
+        severityFilterCombo = new ComboBox<>();
+        severityFilterCombo.setItems("INFO", "MINOR", "MAJOR", "CRITICAL", "BLOCKER");
+        severityFilterCombo.setClearButtonVisible(true);
+        severityFilterCombo.setPlaceholder("Filter");
+        severityFilterCombo.addValueChangeListener(e -> issuesGrid.getDataProvider().refreshAll());
+        ruleFilterEdit = filterEdit();
+        fileFilterEdit = filterEdit();
+        var filterRow = issuesGrid.appendHeaderRow();
+        filterRow.getCell(projectColumn).setComponent(projectFilterEdit);
+        filterRow.getCell(severityColumn).setComponent(severityFilterCombo);
+        filterRow.getCell(ruleColumn).setComponent(ruleFilterEdit);
+        filterRow.getCell(fileColumn).setComponent(fileFilterEdit);
+
+        applyFixesButton = new Button("Send Selected Fixes to SonarQube IDE");
+        applyFixesButton.addClickListener(e -> applyFixes());
         applyFixesButton.addClickShortcut(Key.ENTER);
+        checkoutEdit = new TextField("Local Checkout");
+        applyLocallyButton = new Button("Apply Selected Fixes to Local Checkout");
+        applyLocallyButton.addClickListener(e -> applyFixesLocally());
+        var applyPanel = new HorizontalLayout(applyFixesButton, checkoutEdit, applyLocallyButton);
+        applyPanel.setAlignItems(Alignment.BASELINE);
         fileNameEdit = new TextField("Files Prefix");
         fileNameEdit.setValue("codefix-issues-output-");
-        add(sonarqubePanel, filterPanel, fileNameEdit, issuesPanel, numberOfIssuesFilteredLabel, numberOfIssuesFilteredWithAIFixLabel,
-                exportButton, openInSonarQubeButton,
-                issuesGrid,  applyFixesButton);
+        jsonFormatCombo = new ComboBox<>("JSON Format");
+        jsonFormatCombo.setItems(ExportOptions.JsonFormat.values());
+        jsonFormatCombo.setValue(ExportOptions.JsonFormat.JSON);
+        mboxCheckbox = new Checkbox("Git Patches (mbox)");
+        gzipCheckbox = new Checkbox("Gzip");
+        var exportPanel = new HorizontalLayout(fileNameEdit, jsonFormatCombo, mboxCheckbox, gzipCheckbox);
+        exportPanel.setAlignItems(Alignment.BASELINE);
+
+        projectsGrid = new Grid<>();
+        projectsGrid.addColumn(ProjectScan::project).setHeader("Project");
+        projectsGrid.addColumn(project -> project.failure() == null ? project.status().toString()
+                : project.status() + ": " + project.failure()).setHeader("Status");
+        projectsGrid.addColumn(project -> project.progress().scanned() + " / " + project.progress().total())
+                .setHeader("Scanned Issues");
+        projectsGrid.addColumn(project -> project.progress().withAIFix()).setHeader("With AI Fix");
+        projectsGrid.setHeight("200px");
+        projectsGrid.setItems(projectScans.values());
+        projectsGrid.setVisible(false);
+
+        // counted by the server without a scan, the issues with an AI fix being added up as the scan finds them
+        facetsLabel = new NativeLabel("Issues by Facet : ");
+        facetsGrid = new Grid<>();
+        facetsGrid.addColumn(facet -> facet.field().name()).setHeader("Facet").setAutoWidth(true).setFlexGrow(0);
+        facetsGrid.addColumn(FacetCount::value).setHeader("Value");
+        facetsGrid.addColumn(FacetCount::issues).setHeader("Issues").setComparator(FacetCount::issues)
+                .setAutoWidth(true).setFlexGrow(0);
+        facetsGrid.addColumn(FacetCount::withAIFix).setHeader("With AI Fix").setComparator(FacetCount::withAIFix)
+                .setAutoWidth(true).setFlexGrow(0);
+        facetsGrid.addItemDoubleClickListener(e -> narrowTo(e.getItem()));
+        facetsGrid.setHeight("250px");
+
+        jobsGrid = new Grid<>();
+        jobsGrid.addColumn(Job::id).setHeader("Job").setAutoWidth(true).setFlexGrow(0);
+        jobsGrid.addColumn(Job::name).setHeader("Operation");
+        jobsGrid.addColumn(Job::status).setHeader("Status").setAutoWidth(true).setFlexGrow(0);
+        jobsGrid.addColumn(Job::message).setHeader("Progress");
+        jobsGrid.addComponentColumn(job -> {
+            var cancelJobButton = new Button("Cancel", e -> job.cancel());
+            cancelJobButton.setEnabled(!job.isFinished());
+            return cancelJobButton;
+        }).setAutoWidth(true).setFlexGrow(0);
+        jobsGrid.setHeight("200px");
+        jobsGrid.setItems(jobService.jobs(jobOwner));
+
+        add(sonarqubePanel, filterPanel, exportPanel, issuesPanel, numberOfIssuesFilteredLabel, scanProgressLabel,
+                numberOfIssuesFilteredWithAIFixLabel, scanTimingsLabel, facetsLabel, facetsGrid,
+                exportButton, openInSonarQubeButton, projectsGrid,
+                issuesGrid, applyPanel, jobsGrid);
+        // the issues found only live in this view, whereas exports and fixes go on once it is closed
+        addDetachListener(e -> {
+            cancelScan();
+            cancelCount();
+        });
+    }
+
+    /**
+     * Submits a job of this session, showing its progress in the jobs grid and
+     * handing it to {@code onFinished}, in the UI, once it has finished.
+     */
+    private Job submitJob(String name, Job.Task task, Consumer<Job> onFinished) {
+        var ui = UI.getCurrent();
+        var job = jobService.submit(jobOwner, name, task, changed -> ui.access(() -> {
+            jobsGrid.getDataProvider().refreshItem(changed);
+            if (changed.isFinished()) {
+                onFinished.accept(changed);
+            }
+        }));
+        jobsGrid.setItems(jobService.jobs(jobOwner));
+        return job;
+    }
+
+    private TextField filterEdit() {
+        var filterEdit = new TextField();
+        filterEdit.setPlaceholder("Filter");
+        filterEdit.setClearButtonVisible(true);
+        filterEdit.setValueChangeMode(ValueChangeMode.LAZY);
+        filterEdit.addValueChangeListener(e -> issuesGrid.getDataProvider().refreshAll());
+        return filterEdit;
+    }
+
+    private IssueStore.Filter getIssueFilter() {
+        return new IssueStore.Filter(projectFilterEdit.getValue(), severityFilterCombo.getValue(),
+                ruleFilterEdit.getValue(), fileFilterEdit.getValue());
+    }
+
+    private static List<IssueStore.Sort> getIssueSorts(List<QuerySortOrder> sortOrders) {
+        return sortOrders.stream()
+                .map(order -> new IssueStore.Sort(IssueStore.Field.valueOf(order.getSorted()),
+                        order.getDirection() == SortDirection.DESCENDING))
+                .toList();
     }
 
     private void exportIssuesWithCodeFix() {
-        HttpClient client = HttpClient.newHttpClient();
-        String fileName = getOutputFileName() + "-exported.json";
-        String fileNameCSV = getOutputFileName() + "-exported.csv";
-        try (var writer = new java.io.FileWriter(fileName, true);
-                var writerCSV = new java.io.FileWriter(fileNameCSV, true);) {
-            writer.write("[\n");
-            writerCSV.write("Rule,Severity,File,IssueId,Explanation\n");
-            issuesWithCodeFixList.forEach(issue -> {
-                try {
-                    var issueCodeFix = fetchAiSuggestionsForIssue(client, issue);
-
-                    writer.write(new ObjectMapper().writeValueAsString(issueCodeFix) + System.lineSeparator());
-                    writer.write(",\n");
-
-                    writerCSV.write(
-                            issue.getRule() + "," + issue.getSeverity().toString() + "," + issue.getComponent() + "," +
-                                    "\"" + getSonarQubeIssueLink(issueCodeFix.fix.issueId()) + "\"" +
-                                    ",\"" + issueCodeFix.fix().explanation().replaceAll("\"", "'") + "\""
-                                    + System.lineSeparator());
-                } catch (IOException | InterruptedException e) {
-                    e.printStackTrace();
-                }
-            });
-            writer.write("]\n");
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        var jsonFormat = jsonFormatCombo.getOptionalValue().orElse(ExportOptions.JsonFormat.JSON);
+        var options = new ExportOptions(jsonFormat, mboxCheckbox.getValue(), gzipCheckbox.getValue());
+        var connection = getConnection();
+        var issues = issuesWithCodeFix.issues();
+        var fileName = getOutputFileName();
+        var projects = projectsGrid.isVisible() ? List.copyOf(projectScans.values()) : List.<ProjectScan>of();
+        submitJob("Export AI fixes to " + fileName, job -> {
+            if (!projects.isEmpty()) {
+                exportService.exportPortfolioSummary(projects, fileName, options);
+            }
+            var exported = exportService.exportIssuesWithCodeFix(connection, issues, fileName, options,
+                    (written, total) -> job.progress(written + " of " + total + " AI fixes exported"));
+            return "Exported " + exported + " AI fixes";
+        }, job -> Notification.show(job.name() + ": " + job.message()));
     }
 
-    private String getSonarQubeIssueLink(String issueId) {
-        return  sonarqubeUrlEdit.getValue() + "/project/issues?id=" + projectEdit.getValue() + "&open=" + issueId ;
+    private String getSonarQubeIssueLink(IssueRow issue) {
+        return getConnection().issueLink(issue.project(), issue.key());
     }
 
-    private void dialogIssue(Issue issue) {
+    private void dialogIssue(IssueRow issue) {
         var dialog = new Dialog();
         dialog.setWidth("400px");
         dialog.setHeight("300px");
 
         var layout = new VerticalLayout();
-        layout.add(new NativeLabel("Issue ID: " + issue.getKey()));
-        layout.add(new NativeLabel("Project: " + issue.getProject()));
-        layout.add(new NativeLabel("Severity: " + issue.getSeverity()));
-        layout.add(new NativeLabel("Rule: " + issue.getRule()));
-        layout.add(new NativeLabel("File: " + issue.getComponent()));
+        layout.add(new NativeLabel("Issue ID: " + issue.key()));
+        layout.add(new NativeLabel("Project: " + issue.project()));
+        layout.add(new NativeLabel("Severity: " + issue.severity()));
+        layout.add(new NativeLabel("Rule: " + issue.rule()));
+        layout.add(new NativeLabel("File: " + issue.component()));
 
         var closeButton = new Button("Close", e -> dialog.close());
         layout.add(closeButton);
@@ -197,263 +357,275 @@ public class BulkIssuesView extends VerticalLayout {
     }
 
     private void applyFixes() {
-        HttpClient client = HttpClient.newHttpClient();
-
-        var port = findSonarLintPortByCheckingStatusAPI();
-        if (port == -1) {
-            Notification.show("SonarLint not running");
+        var issues = issuesGrid.getSelectedItems().stream().map(IssueRow::toIssue).toList();
+        if (issues.isEmpty()) {
+            Notification.show("No issue selected");
             return;
         }
-        issuesGrid.getSelectedItems().forEach(issue -> {
-            try {
-                var issueCodeFix = fetchAiSuggestionsForIssue(client, issue);
-                var codeFile = getCodeFile(issue.getComponent());
-                sendCodeFixToSonarLint(port, issue, issueCodeFix.fix, codeFile);
-            } catch (IOException | InterruptedException e) {
-                e.printStackTrace();
-            }
+        Notification.show("Sending " + issues.size() + " fixes to SonarLint");
+        applyFixesButton.setEnabled(false);
+
+        // send in the background, showing the status of every fix in the grid as soon as it is known
+        var ui = UI.getCurrent();
+        var connection = getConnection();
+        var branch = branchEdit.getValue().isEmpty() ? "master" : branchEdit.getValue();
+        var appliedFixesFile = Path.of(getOutputFileName() + "-applied.json");
+        // each project is open in its own IDE, if at all
+        var issuesByProject = issues.stream().collect(Collectors.groupingBy(Issue::getProject, LinkedHashMap::new,
+                Collectors.toList()));
+        SonarLintService.DeliveryListener listener = (issue, status, message) -> ui.access(() -> {
+            fixStatusByIssueKey.put(issue.getKey(),
+                    status == SonarLintService.DeliveryStatus.FAILED ? status + ": " + message : status.toString());
+            issuesGrid.getDataProvider().refreshItem(IssueRow.of(issue));
         });
+        submitJob("Send " + issues.size() + " AI fixes to SonarLint", job -> {
+            var delivered = 0;
+            for (var projectIssues : issuesByProject.entrySet()) {
+                try {
+                    delivered += sonarLintService.sendFixes(connection, projectIssues.getKey(), branch,
+                            projectIssues.getValue(), appliedFixesFile, listener);
+                } catch (IOException e) {
+                    projectIssues.getValue().forEach(issue -> listener.onStatus(issue,
+                            SonarLintService.DeliveryStatus.FAILED, e.getMessage()));
+                }
+            }
+            return "SonarLint accepted " + delivered + " of " + issues.size() + " fixes";
+        }, job -> fixesSent(job.message()));
     }
 
-    private String createGitPatch(SonarLintSuggestion suggestion, String codeFile) {
-        // header
-        StringBuilder header = new StringBuilder();
-        header.append("From: ").append(sonarqubeUserEdit.getValue()).append("\n");
-        header.append("Date: ").append(java.time.LocalDate.now()).append("\n");
-        header.append("Subject: [PATCH] Fix issue ").append(suggestion.suggestionId()).append("\n\n");
-        header.append("---\n");
-
-        // modified files
-        int startLine = suggestion.fileEdit().changes().get(0).beforeLineRange().startLine();
-        int endLine = suggestion.fileEdit().changes().get(0).beforeLineRange().endLine();
-        var numberOfOldLines = endLine - startLine + 1;
-        var numberOfNewLines = suggestion.fileEdit().changes().get(0).after().split("\n").length;
-
-        var modifiedFiles = new StringBuilder();
-        modifiedFiles.append("a/").append(suggestion.fileEdit().path())
-                .append(" | ")
-                .append(numberOfOldLines + numberOfNewLines).append(" ")
-                .append("+".repeat(numberOfNewLines)).append("-".repeat(numberOfOldLines)).append("\n");
-
-        // hunk
-        var hunk = new StringBuilder();
-        hunk.append("@@ -")
-                .append(startLine).append(",").append(endLine).append(" ")
-                .append(" +").append(startLine).append(",").append(numberOfNewLines)
-                .append(" @@\n");
-
-        // lines
-        var lines = new StringBuilder();
-        lines.append(codeFile).append("\n");
-
-        // Patch
-        var patch = new StringBuilder();
-        patch.append(header).append(modifiedFiles).append(hunk).append(lines);
-        return patch.toString();
+    private void applyFixesLocally() {
+        var issues = issuesGrid.getSelectedItems().stream().map(IssueRow::toIssue).toList();
+        if (issues.isEmpty()) {
+            Notification.show("No issue selected");
+            return;
+        }
+        if (checkoutEdit.getValue().isBlank()) {
+            Notification.show("No local checkout given");
+            return;
+        }
+        Notification.show("Applying " + issues.size() + " fixes to " + checkoutEdit.getValue());
+        applyLocallyButton.setEnabled(false);
+
+        var ui = UI.getCurrent();
+        var connection = getConnection();
+        var checkoutRoot = Path.of(checkoutEdit.getValue());
+        submitJob("Apply " + issues.size() + " AI fixes to " + checkoutRoot, job -> {
+            var result = localPatchService.applyFixes(connection, checkoutRoot, issues);
+            ui.access(() -> {
+                result.applied().forEach(issue -> fixStatusByIssueKey.put(issue.getKey(), "APPLIED"));
+                result.conflicts().forEach(conflict -> fixStatusByIssueKey.put(conflict.issue().getKey(),
+                        "CONFLICT: " + conflict.reason()));
+                issuesGrid.getDataProvider().refreshAll();
+            });
+            return "Applied " + result.applied().size() + " fixes to " + result.filesChanged() + " files, "
+                    + result.conflicts().size() + " not applied";
+        }, job -> fixesAppliedLocally(job.message()));
     }
 
-    private String getCodeFile(String component) {
-        // Call the SonarQube API to get the issues
-        var httpConnector = HttpConnector.newBuilder()
-                .url(sonarqubeUrlEdit.getValue())
-                .credentials(sonarqubeUserEdit.getValue(), sonarqubePasswordEdit.getValue())
-                .build();
-        var wsClient = WsClientFactories.getDefault().newClient(httpConnector);
-        var fileCodeRequest = new RawRequest();
-        fileCodeRequest.setKey(component);
-        return new String(wsClient.sources().raw(fileCodeRequest).getBytes());
+    private void fixesAppliedLocally(String message) {
+        applyLocallyButton.setEnabled(true);
+        Notification.show(message);
     }
 
-    private void getIssues() {
-        issuesWithCodeFixList = getIssuesFilteredAndWithAIFix();
-        issuesGrid.setItems(issuesWithCodeFixList);
-        numberOfIssuesFilteredWithAIFixLabel
-                .setText("Total Filtered Issues with and AI Fix : " + issuesWithCodeFixList.size());
+    private void fixesSent(String message) {
+        applyFixesButton.setEnabled(true);
+        Notification.show(message);
     }
 
-    private int findSonarLintPortByCheckingStatusAPI() {
-        var port = SONARLINT_API_INITIAL_PORT;
-        while (port <= SONARLINT_API_FINAL_PORT) {
-            var uri = URI.create("http://localhost:" + port + "/sonarlint/api/status");
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(uri)
-                    .GET()
-                    .header("Origin", sonarqubeUrlEdit.getValue())
-                    .header("Referer", sonarqubeUrlEdit.getValue())
-                    .build();
-            HttpClient client = HttpClient.newHttpClient();
-            try {
-                HttpResponse<String> response = client.send(request, BodyHandlers.ofString());
-                if ((response.statusCode() == 200)
-                        && (response.body().toLowerCase().contains("- " + projectEdit.getValue().toLowerCase()))) {
-                    return port;
+    /**
+     * Counts the issues of the query by facet in the background, which takes a
+     * search or a few whatever the number of issues.
+     */
+    private void countIssues() {
+        cancelCount();
+        var ui = UI.getCurrent();
+        var connection = getConnection();
+        var query = getIssueQuery();
+        facetsJob = submitJob("Count issues of " + query.project(), job -> {
+            var facets = issueFacetService.facets(connection, query);
+            ui.access(() -> {
+                if (facetsJob == job) {
+                    issueFacets = facets;
+                    showFacets();
                 }
-            } catch (IOException | InterruptedException e) {
-                e.printStackTrace();
+            });
+            return "Counted " + facets.total() + " issues";
+        }, job -> {
+            if (job.status() == Job.Status.FAILED) {
+                Notification.show(job.name() + ": " + job.message());
             }
-            port++;
-        }
-        return -1;
+        });
     }
 
-    private void sendCodeFixToSonarLint(int port, Issue issue, AISuggestion issueCodeFix, String codeFile)
-            throws JsonProcessingException {
-        var uri = URI.create("http://localhost:" + port + SONARLINT_API_FIX +
-                "?server=" + URLEncoder.encode(sonarqubeUrlEdit.getValue(), StandardCharsets.UTF_8) +
-                "&project=" + projectEdit.getValue() +
-                "&issue=" + issueCodeFix.issueId() +
-                "&branch=master");
-
-        var codeFileLines = codeFile.split("\n");
-        var sonarLintSuggestion = new SonarLintSuggestion(
-                issueCodeFix.explanation(),
-                new SonarLintSuggestion.FileEdit(
-                        issueCodeFix.changes().stream().map(change -> new SonarLintSuggestion.FileEdit.Change(
-                                change.newCode(),
-                                String.join("\n",
-                                        Arrays.copyOfRange(codeFileLines, change.startLine() - 1, change.endLine())),
-                                new SonarLintSuggestion.FileEdit.Change.LineRange(
-                                        change.startLine(),
-                                        change.endLine())))
-                                .toList(),
-                        getFileFromComponent(issue.getComponent())),
-                issueCodeFix.id());
-        HttpRequest sendCodeFixToSonarLintRequest = HttpRequest.newBuilder()
-                .uri(URI.create(uri.toString()))
-                .POST(BodyPublishers.ofString(new ObjectMapper().writeValueAsString(sonarLintSuggestion)))
-                .build();
-
-        HttpClient client = HttpClient.newHttpClient();
-        try {
-            HttpResponse<String> response = client.send(sendCodeFixToSonarLintRequest, BodyHandlers.ofString());
-            System.out.println(response.request().toString() + "\n" + response.body());
-
-            writeToFileAppliedCodeFix(issueCodeFix);
-            Notification.show("Response from SonarLint: " + response.statusCode() + "\n" + response.body());
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
+    private void cancelCount() {
+        if (facetsJob != null) {
+            facetsJob.cancel();
+            facetsJob = null;
         }
+    }
 
+    private void showFacets() {
+        facetsLabel.setText("Issues by Facet : " + issueFacets.total() + " issues, "
+                + issuesWithCodeFix.size() + " with an AI fix found so far");
+        facetsGrid.setItems(issueFacets.withAIFix(issuesWithCodeFix));
     }
 
-    private void writeToFileAppliedCodeFix(AISuggestion issueCodeFix) {
-        String fileName = getOutputFileName() + "-applied.json";
-        try (var writer = new java.io.FileWriter(fileName, true)) {
-            writer.write(new ObjectMapper().writeValueAsString(issueCodeFix) + System.lineSeparator());
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Narrows the next scan, or the issues grid for a rule, to the value of the
+     * facet.
+     */
+    private void narrowTo(FacetCount facet) {
+        switch (facet.field()) {
+            case PROJECT -> {
+                allProjectsCheckbox.setValue(false);
+                projectEdit.setValue(facet.value());
+            }
+            case SEVERITY -> severityCombo.setValue(facet.value());
+            case RULE -> ruleFilterEdit.setValue(facet.value());
+            case FOLDER, FILE -> folderEdit.setValue(facet.value());
         }
     }
 
-    private String getOutputFileName() {
-        String fileName = fileNameEdit.getValue() + projectEdit.getValue();
-        fileName += (severityCombo.getValue() != null) ? "-" + severityCombo.getValue() : "";
-        fileName += (folderEdit.getValue().isEmpty()) ? "" : "-" + folderEdit.getValue();
-        fileName += (branchEdit.getValue().isEmpty()) ? "" : "-" + branchEdit.getValue();
-        return fileName;
+    private void getIssues() {
+        cancelScan();
+        issuesWithCodeFix = new IssueStore();
+        issuesGrid.getDataProvider().refreshAll();
+        issueFacets = IssueFacets.NONE;
+        showFacets();
+        countIssues();
+        showScanProgress(new ScanProgress(0, 0, 0, 0));
+        getIssuesButton.setEnabled(false);
+        cancelScanButton.setEnabled(true);
+
+        // scan in the background, pushing every issue with a fix to the grid as soon as it is found
+        var ui = UI.getCurrent();
+        var connection = getConnection();
+        var query = getIssueQuery();
+        var incremental = incrementalCheckbox.getValue();
+        var issuesFound = issuesWithCodeFix;
+        var stats = new CallStats();
+        projectScans.clear();
+        projectsGrid.getDataProvider().refreshAll();
+        projectsGrid.setVisible(allProjectsCheckbox.getValue());
+        if (allProjectsCheckbox.getValue()) {
+            scanPortfolio(ui, connection, query, incremental, issuesFound, stats);
+            return;
+        }
+        scanJob = submitJob("Scan issues of " + query.project(), job -> {
+            var lastProgress = new AtomicReference<>(new ScanProgress(0, 0, 0, 0));
+            issueScanService.scan(connection, query, incremental, stats, (progress, newIssuesWithAIFix) -> {
+                lastProgress.set(progress);
+                job.progress(progress.scanned() + " of " + progress.total() + " issues scanned, "
+                        + progress.withAIFix() + " with an AI fix");
+                ui.access(() -> {
+                    issuesFound.addAll(newIssuesWithAIFix);
+                    if (issuesFound == issuesWithCodeFix) {
+                        issuesGrid.getDataProvider().refreshAll();
+                        showScanProgress(progress);
+                        showFacets();
+                        scanTimingsLabel.setText("Scan Time : " + stats.summary());
+                    }
+                });
+            });
+            return "Scanned " + lastProgress.get().scanned() + " issues, " + lastProgress.get().withAIFix()
+                    + " with an AI fix";
+        }, job -> {
+            if (issuesFound == issuesWithCodeFix) {
+                scanTimingsLabel.setText("Scan Time : " + stats.summary());
+            }
+            scanFinished(issuesFound, "Requesting issues: " + job.message());
+        });
     }
 
-    private String getFileFromComponent(String component) {
-        return component.substring(component.indexOf(":") + 1);
+    /**
+     * Scans all the projects of the server in the background, showing where
+     * each one stands in the projects grid and merging their issues with a fix
+     * into the issues grid.
+     */
+    private void scanPortfolio(UI ui, SonarQubeConnection connection, IssueQuery query, boolean incremental,
+            IssueStore issuesFound, CallStats stats) {
+        scanJob = submitJob("Scan issues of all projects", job -> {
+            var lastProgress = new AtomicReference<>(new ScanProgress(0, 0, 0, 0));
+            portfolioScanService.scan(connection, query.severity(), query.folder(), incremental, stats,
+                    new PortfolioScanService.PortfolioListener() {
+                        @Override
+                        public void onProjects(List<ProjectScan> projects) {
+                            job.progress(projects.size() + " projects to scan");
+                            ui.access(() -> {
+                                if (issuesFound == issuesWithCodeFix) {
+                                    projects.forEach(project -> projectScans.put(project.project(), project));
+                                    projectsGrid.getDataProvider().refreshAll();
+                                }
+                            });
+                        }
+
+                        @Override
+                        public void onProgress(ProjectScan project, ScanProgress progress,
+                                List<Issue> newIssuesWithAIFix) {
+                            lastProgress.set(progress);
+                            job.progress(progress.scanned() + " of " + progress.total() + " issues scanned, "
+                                    + progress.withAIFix() + " with an AI fix");
+                            ui.access(() -> {
+                                issuesFound.addAll(newIssuesWithAIFix);
+                                if (issuesFound == issuesWithCodeFix) {
+                                    projectScans.put(project.project(), project);
+                                    projectsGrid.getDataProvider().refreshAll();
+                                    issuesGrid.getDataProvider().refreshAll();
+                                    showScanProgress(progress);
+                                    showFacets();
+                                    scanTimingsLabel.setText("Scan Time : " + stats.summary());
+                                }
+                            });
+                        }
+                    });
+            return "Scanned " + lastProgress.get().scanned() + " issues of all projects, "
+                    + lastProgress.get().withAIFix() + " with an AI fix";
+        }, job -> {
+            if (issuesFound == issuesWithCodeFix) {
+                scanTimingsLabel.setText("Scan Time : " + stats.summary());
+            }
+            scanFinished(issuesFound, "Requesting issues: " + job.message());
+        });
     }
 
-    private SearchWsResponse getListOfIssues(String project, String page, String pageSize) {
-        // Call the SonarQube API to get the issues
-        var httpConnector = HttpConnector.newBuilder()
-                .url(sonarqubeUrlEdit.getValue())
-                .credentials(sonarqubeUserEdit.getValue(), sonarqubePasswordEdit.getValue())
-                .build();
-        var wsClient = WsClientFactories.getDefault().newClient(httpConnector);
-        var issueRequest = new SearchRequest();
-        issueRequest.setProjects(Collections.singletonList(project));
-        if (severityCombo.getValue() != null) {
-            issueRequest.setSeverities(List.of(severityCombo.getValue()));
+    private void cancelScan() {
+        if (scanJob != null) {
+            scanJob.cancel();
+            scanJob = null;
         }
-
-        // Apparently this is not working as expected and it returns 0 issues with
-        // values like "gradle-plugin/%", "gradle-plugin/*", "*", "/*
-        //
-        // if (!folderEdit.getValue().isEmpty()) {
-        // issueRequest.setComponentKeys(List.of(project + ":" +
-        // folderEdit.getValue()));
-        // }
-
-        issueRequest.setP(page);
-        issueRequest.setPs(pageSize);
-        return wsClient.issues().search(issueRequest);
     }
 
-    private List<Issue> getIssuesFilteredAndWithAIFix() {
-        HttpClient client = HttpClient.newHttpClient();
-
-        // to know the total number of issues
-        var issuesListResponse = getListOfIssues(projectEdit.getValue(), "1", "1");
-        numberOfIssuesFilteredLabel.setText("Total Project Issues : " + issuesListResponse.getPaging().getTotal());
-
-        // get all the issues, page by page
-        // for each issue, check if it is for a file in the folder filtered
-        // if so check if the issue has code fix suggestions
-        var issuesRetrieved = 0;
-        var issuesWithCodeFix = new ArrayList<Issue>();
-        var page = 1;
-        while (issuesRetrieved < issuesListResponse.getPaging().getTotal()) {
-            issuesListResponse = getListOfIssues(projectEdit.getValue(), String.valueOf(page), "100");
-            issuesRetrieved += issuesListResponse.getIssuesCount();
-            var issuesList = issuesListResponse.getIssuesList();
-            for (var issue : issuesList) {
-                // if the issue is for a file in the folder filtered
-                if (folderEdit.getValue().isEmpty()
-                        || issue.getComponent().startsWith(projectEdit.getValue() + ":" + folderEdit.getValue())) {
-                    var urlFixSuggestionsIssues = sonarqubeUrlEdit.getValue() + API_V2_FIX_SUGGESTIONS_ISSUES
-                            + issue.getKey();
-
-                    // check if the issue has code fix suggestions
-                    HttpRequest requestCheckIfIssueHasCodeFix = HttpRequest.newBuilder()
-                            .uri(URI.create(urlFixSuggestionsIssues))
-                            .header("Authorization", getAuthorization())
-                            .build();
-                    try {
-                        HttpResponse<String> response = client.send(requestCheckIfIssueHasCodeFix,
-                                BodyHandlers.ofString());
-                        if (response.body().contains("\"aiSuggestion\":\"AVAILABLE\"")) {
-                            issuesWithCodeFix.add(issue);
-                        }
-                    } catch (IOException | InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-            page++;
+    private void scanFinished(IssueStore issuesFound, String message) {
+        if (issuesFound != issuesWithCodeFix) {
+            // a newer scan has replaced this one
+            return;
         }
-        return issuesWithCodeFix;
+        issuesGrid.getDataProvider().refreshAll();
+        getIssuesButton.setEnabled(true);
+        cancelScanButton.setEnabled(false);
+        Notification.show(message);
     }
 
-    private IssueAndFix fetchAiSuggestionsForIssue(HttpClient client, Issue issue)
-            throws IOException, InterruptedException {
-        HttpRequest requestCheckIfIssueHasCodeFix;
-        HttpResponse<String> response;
-
-        requestCheckIfIssueHasCodeFix = HttpRequest.newBuilder()
-                .uri(URI.create(sonarqubeUrlEdit.getValue() + API_V2_FIX_SUGGESTIONS_AI_SUGGESTIONS))
-                .header("Authorization", getAuthorization())
-                .POST(BodyPublishers.ofString("{\"issueId\": \"" + issue.getKey() + "\"}"))
-                .header("Content-Type", "application/json")
-                .build();
-        response = client.send(requestCheckIfIssueHasCodeFix, BodyHandlers.ofString());
-        Notification.show("AI suggestions for issue " + issue.getKey() + " are: " + response.body());
-        if (response.body().contains("message")) {
-            Notification.show("Error " + issue.getKey() + " is: " + response.body());
-            return null;
-        }
+    private void showScanProgress(ScanProgress progress) {
+        numberOfIssuesFilteredLabel.setText("Total Project Issues : " + progress.total());
+        scanProgressLabel.setText("Scanned Issues : " + progress.scanned() + " / " + progress.total()
+                + " - Matching Filter : " + progress.matching());
+        numberOfIssuesFilteredWithAIFixLabel
+                .setText("Total Filtered Issues with and AI Fix : " + progress.withAIFix());
+    }
 
-        var aiSuggestion = new ObjectMapper().readValue(response.body(), AISuggestion.class);
+    private String getOutputFileName() {
+        return BulkFixService.getOutputFileName(fileNameEdit.getValue(), getIssueQuery(), branchEdit.getValue());
+    }
 
-        return new IssueAndFix(issue.getComponent(), issue.getRule(), aiSuggestion);
+    private IssueQuery getIssueQuery() {
+        var project = allProjectsCheckbox.getValue() ? PortfolioScanService.ALL_PROJECTS : projectEdit.getValue();
+        return new IssueQuery(project, severityCombo.getValue(), folderEdit.getValue());
     }
 
-    private String getAuthorization() {
-        return "Basic " + Base64.getEncoder()
-                .encodeToString((sonarqubeUserEdit.getValue() + ":" + sonarqubePasswordEdit.getValue()).getBytes());
+    private SonarQubeConnection getConnection() {
+        return new SonarQubeConnection(sonarqubeUrlEdit.getValue(), sonarqubeUserEdit.getValue(),
+                sonarqubePasswordEdit.getValue());
     }
 
 }
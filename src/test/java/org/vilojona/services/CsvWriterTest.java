@@ -0,0 +1,41 @@
+package org.vilojona.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+class CsvWriterTest {
+
+    private final StringWriter out = new StringWriter();
+
+    @Test
+    void writesPlainFieldsAsTheyAreAndEndsRecordsWithCrlf() throws Exception {
+        try (var writer = new CsvWriter(out)) {
+            writer.writeRecord("key", "rule", "line");
+            writer.writeRecord("AZ-1", "java:S100", "12");
+        }
+
+        assertThat(out).hasToString("key,rule,line\r\nAZ-1,java:S100,12\r\n");
+    }
+
+    @Test
+    void quotesTheFieldsWithCommasQuotesOrLineBreaks() throws Exception {
+        try (var writer = new CsvWriter(out)) {
+            writer.writeRecord("a, b", "say \"hi\"", "one\ntwo", "one\r\ntwo", "'single'");
+        }
+
+        assertThat(out).hasToString("\"a, b\",\"say \"\"hi\"\"\",\"one\ntwo\",\"one\r\ntwo\",'single'\r\n");
+    }
+
+    @Test
+    void writesNullsAsEmptyFields() throws Exception {
+        try (var writer = new CsvWriter(out)) {
+            writer.writeRecord("key", null, "");
+            writer.writeRecord();
+        }
+
+        assertThat(out).hasToString("key,,\r\n\r\n");
+    }
+}
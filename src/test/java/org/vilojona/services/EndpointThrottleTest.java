@@ -0,0 +1,140 @@
+package org.vilojona.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntToLongFunction;
+
+import org.junit.jupiter.api.Test;
+
+class EndpointThrottleTest {
+
+    private static final ServerThrottles.Settings SETTINGS = new ServerThrottles.Settings(8, 1, 64, 3, 5,
+            Duration.ofSeconds(30), Duration.ZERO);
+
+    private final AtomicLong clock = new AtomicLong();
+    private final EndpointThrottle throttle = new EndpointThrottle("api/issues/search", SETTINGS, clock::get);
+
+    @Test
+    void keepsRaisingTheLimitWhenTheLatencyVariesWhateverTheLoad() throws Exception {
+        var random = new Random(42);
+
+        run(5_000, inFlight -> TimeUnit.MILLISECONDS.toNanos(5 + random.nextInt(96)));
+
+        assertThat(limit()).isGreaterThan(SETTINGS.initialLimit() * 2);
+    }
+
+    @Test
+    void lowersTheLimitWhenTheLatencyRisesWithTheLoad() throws Exception {
+        // the server answers 16 requests at once in 10 ms, and queues the others
+        run(5_000, inFlight -> TimeUnit.MILLISECONDS.toNanos(10) * Math.max(16, inFlight) / 16);
+
+        assertThat(limit()).isBetween(16, 16 * 3);
+    }
+
+    @Test
+    void halvesTheLimitOnceForTheRequestsInFlightTogether() throws Exception {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+        var permits = new EndpointThrottle.Permit[8];
+        for (var i = 0; i < permits.length; i++) {
+            permits[i] = throttle.acquire();
+        }
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+        for (var permit : permits) {
+            throttle.release(permit, EndpointThrottle.Outcome.FAILED, null);
+        }
+
+        assertThat(limit()).isEqualTo(4);
+    }
+
+    @Test
+    void opensTheCircuitAfterFailuresInARowThenClosesItOnASuccessfulTrial() throws Exception {
+        for (var i = 0; i < SETTINGS.failureThreshold(); i++) {
+            var permit = throttle.acquire();
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+            throttle.release(permit, EndpointThrottle.Outcome.FAILED, null);
+        }
+        assertThat(throttle.stats("server").circuit()).isEqualTo("OPEN");
+        assertThatThrownBy(throttle::acquire).isInstanceOf(IOException.class);
+
+        clock.addAndGet(SETTINGS.openDuration().toNanos());
+        var trial = throttle.acquire();
+        assertThat(trial.trial()).isTrue();
+        assertThatThrownBy(throttle::acquire).isInstanceOf(IOException.class);
+        throttle.release(trial, EndpointThrottle.Outcome.SUCCESS, null);
+
+        assertThat(throttle.stats("server").circuit()).isEqualTo("CLOSED");
+        assertThat(throttle.acquire().trial()).isFalse();
+    }
+
+    @Test
+    void pausesForAsLongAsTheRetryAfterOfAnOverloadedResponse() throws Exception {
+        var permit = throttle.acquire();
+        throttle.release(permit, EndpointThrottle.Outcome.OVERLOADED, "2");
+
+        assertThatThrownBy(throttle::acquire).isInstanceOf(IOException.class);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertThat(throttle.acquire()).isNotNull();
+    }
+
+    @Test
+    void isIdleOnlyWithoutRequestsSinceThen() throws Exception {
+        var permit = throttle.acquire();
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(throttle.isIdleSince(clock.get())).isFalse();
+
+        throttle.release(permit, EndpointThrottle.Outcome.SUCCESS, null);
+        assertThat(throttle.isIdleSince(clock.get())).isFalse();
+        assertThat(throttle.isIdleSince(clock.get() + 1)).isTrue();
+    }
+
+    @Test
+    void parsesRetryAfterInSecondsOrAsADate() {
+        assertThat(EndpointThrottle.parseRetryAfter("120")).isEqualTo(Duration.ofMinutes(2));
+        assertThat(EndpointThrottle.parseRetryAfter(null)).isZero();
+        assertThat(EndpointThrottle.parseRetryAfter("soon")).isZero();
+        var inAMinute = ZonedDateTime.now().plusMinutes(1).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        assertThat(EndpointThrottle.parseRetryAfter(inAMinute)).isBetween(Duration.ofSeconds(55),
+                Duration.ofMinutes(1));
+    }
+
+    /**
+     * Sends requests as fast as the throttle lets them, each taking the
+     * latency for the number of requests in flight when it was sent.
+     */
+    private void run(int requests, IntToLongFunction latency) throws Exception {
+        var inFlight = new PriorityQueue<Request>();
+        for (var sent = 0; sent < requests; sent++) {
+            while (inFlight.size() >= limit()) {
+                var request = inFlight.remove();
+                clock.set(request.answeredAt());
+                throttle.release(request.permit(), EndpointThrottle.Outcome.SUCCESS, null);
+            }
+            var permit = throttle.acquire();
+            inFlight.add(new Request(permit, clock.get() + latency.applyAsLong(inFlight.size() + 1)));
+        }
+    }
+
+    private int limit() {
+        return throttle.stats("server").limit();
+    }
+
+    private record Request(
+        EndpointThrottle.Permit permit,
+        long answeredAt
+    ) implements Comparable<Request> {
+
+        @Override
+        public int compareTo(Request other) {
+            return Long.compare(answeredAt, other.answeredAt);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package org.vilojona.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class FilePatchTest {
+
+    private static final String PATH = "src/A.java";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writesTheDiffOfAChangeWithItsContext() throws Exception {
+        var patch = new FilePatch(PATH, SourceFile.of(lines(10, "\n")));
+        patch.add(fix(new AISuggestion.Change(5, 5, "five")));
+
+        assertThat(diff(patch)).isEqualTo("""
+                diff --git a/src/A.java b/src/A.java
+                --- a/src/A.java
+                +++ b/src/A.java
+                @@ -2,7 +2,7 @@
+                 line 2
+                 line 3
+                 line 4
+                -line 5
+                +five
+                 line 6
+                 line 7
+                 line 8
+                """);
+        assertThat(patch.apply()).isEqualTo(lines(10, "\n").replace("line 5\n", "five\n"));
+    }
+
+    @Test
+    void writesTheDiffOfAnInsertionWithTheContextAroundIt() throws Exception {
+        var patch = new FilePatch(PATH, SourceFile.of(lines(10, "\n")));
+        patch.add(fix(new AISuggestion.Change(5, 4, "inserted")));
+
+        assertThat(diff(patch)).endsWith("""
+                @@ -2,6 +2,7 @@
+                 line 2
+                 line 3
+                 line 4
+                +inserted
+                 line 5
+                 line 6
+                 line 7
+                """);
+        assertThat(patch.apply()).isEqualTo(lines(10, "\n").replace("line 5\n", "inserted\nline 5\n"));
+    }
+
+    @Test
+    void mergesTheChangesWhoseContextTouchesIntoOneHunk() throws Exception {
+        var patch = new FilePatch(PATH, SourceFile.of(lines(30, "\n")));
+        patch.add(fix(new AISuggestion.Change(2, 2, "two")));
+        patch.add(fix(new AISuggestion.Change(9, 9, "nine")));
+        patch.add(fix(new AISuggestion.Change(20, 20, "twenty")));
+
+        assertThat(diff(patch).lines().filter(line -> line.startsWith("@@"))).containsExactly(
+                "@@ -1,12 +1,12 @@",
+                "@@ -17,7 +17,7 @@");
+    }
+
+    @Test
+    void startsTheHunksAfterLinesAddedOrRemovedWhereTheyAreInTheNewFile() throws Exception {
+        var patch = new FilePatch(PATH, SourceFile.of(lines(30, "\n")));
+        patch.add(fix(new AISuggestion.Change(2, 2, "two\nand a half")));
+        patch.add(fix(new AISuggestion.Change(15, 17, "")));
+        patch.add(fix(new AISuggestion.Change(25, 25, "twenty-five")));
+
+        assertThat(diff(patch).lines().filter(line -> line.startsWith("@@"))).containsExactly(
+                "@@ -1,5 +1,6 @@",
+                "@@ -12,9 +13,6 @@",
+                "@@ -22,7 +20,7 @@");
+    }
+
+    @Test
+    void refusesTheFixesThatOverlapOrFallOutsideOfTheFile() {
+        var patch = new FilePatch(PATH, SourceFile.of(lines(10, "\n")));
+
+        assertThat(patch.add(fix(new AISuggestion.Change(3, 5, "three to five")))).isTrue();
+        assertThat(patch.add(fix(new AISuggestion.Change(5, 6, "five and six")))).isFalse();
+        assertThat(patch.add(fix(new AISuggestion.Change(1, 3, "one to three")))).isFalse();
+        assertThat(patch.add(fix(new AISuggestion.Change(7, 8, "seven"), new AISuggestion.Change(8, 8, "eight"))))
+                .isFalse();
+        assertThat(patch.add(fix(new AISuggestion.Change(10, 11, "ten")))).isFalse();
+        assertThat(patch.add(fix(new AISuggestion.Change(0, 1, "zero")))).isFalse();
+        assertThat(patch.add(fix())).isFalse();
+        assertThat(patch.add(fix(new AISuggestion.Change(4, 3, "inside three to five")))).isFalse();
+        assertThat(patch.add(fix(new AISuggestion.Change(3, 2, "before three")))).isFalse();
+        assertThat(patch.add(fix(new AISuggestion.Change(7, 6, "")))).isFalse();
+        assertThat(patch.add(fix(new AISuggestion.Change(12, 11, "after the end")))).isFalse();
+        assertThat(patch.add(fix(new AISuggestion.Change(6, 6, "six")))).isTrue();
+        assertThat(patch.add(fix(new AISuggestion.Change(11, 10, "at the end")))).isTrue();
+
+        assertThat(patch.fixes()).hasSize(3);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("patches")
+    void writesDiffsThatGitAppliesToTheSameFileAsApply(String name, String source, List<AISuggestion.Change> changes)
+            throws Exception {
+        assumeTrue(GitRepository.isGitAvailable(), "git is needed to apply the diff");
+        var repository = GitRepository.init(directory.resolve("repository"));
+        repository.commit(PATH, source);
+        var patch = new FilePatch(PATH, SourceFile.of(source));
+        changes.forEach(change -> assertThat(patch.add(fix(change))).isTrue());
+        var diff = directory.resolve("fixes.diff");
+        Files.writeString(diff, diff(patch));
+
+        repository.git("apply", diff.toString());
+
+        assertThat(repository.read(PATH)).isEqualTo(patch.apply());
+    }
+
+    static Stream<Arguments> patches() {
+        var changes = List.of(
+                new AISuggestion.Change(1, 1, "one"),
+                new AISuggestion.Change(4, 5, "four\nand five\nand a half"),
+                new AISuggestion.Change(12, 14, ""),
+                new AISuggestion.Change(20, 20, "twenty"));
+        var insertions = List.of(
+                new AISuggestion.Change(1, 0, "zero"),
+                new AISuggestion.Change(5, 5, "five"),
+                new AISuggestion.Change(6, 5, "five and a half\nand three quarters"),
+                new AISuggestion.Change(12, 11, "eleven and a half"),
+                new AISuggestion.Change(21, 20, "twenty-one\ntwenty-two"));
+        return Stream.of(
+                Arguments.of("LF", lines(20, "\n"), changes),
+                Arguments.of("CRLF", lines(20, "\r\n"), changes),
+                Arguments.of("no newline at the end", lines(20, "\n").strip(), changes),
+                Arguments.of("CRLF, no newline at the end", lines(20, "\r\n").strip(), changes),
+                Arguments.of("last line removed", lines(20, "\n"), List.of(new AISuggestion.Change(19, 20, ""))),
+                Arguments.of("last line removed, no newline at the end", lines(20, "\n").strip(),
+                        List.of(new AISuggestion.Change(19, 20, ""))),
+                Arguments.of("empty lines", "a\n\n\nb\n\n", List.of(new AISuggestion.Change(2, 2, "c"))),
+                Arguments.of("insertions", lines(20, "\n"), insertions),
+                Arguments.of("CRLF insertions", lines(20, "\r\n"), insertions),
+                Arguments.of("insertions, no newline at the end", lines(20, "\n").strip(), insertions),
+                Arguments.of("CRLF insertions, no newline at the end", lines(20, "\r\n").strip(), insertions),
+                Arguments.of("insertion into an empty file", "", List.of(new AISuggestion.Change(1, 0, "one"))));
+    }
+
+    private static String lines(int count, String lineEnding) {
+        return IntStream.rangeClosed(1, count).mapToObj(line -> "line " + line + lineEnding)
+                .collect(Collectors.joining());
+    }
+
+    private static AISuggestion fix(AISuggestion.Change... changes) {
+        return new AISuggestion("fix", "issue", "Because", List.of(changes));
+    }
+
+    private static String diff(FilePatch patch) throws Exception {
+        var diff = new StringBuilder();
+        patch.writeDiff(diff);
+        return diff.toString();
+    }
+}
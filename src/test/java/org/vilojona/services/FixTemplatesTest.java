@@ -0,0 +1,161 @@
+package org.vilojona.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sonarqube.ws.Common.TextRange;
+import org.sonarqube.ws.Issues.Issue;
+
+class FixTemplatesTest {
+
+    private static final String COMPONENT = "project:src/A.java";
+    private static final String SOURCE = """
+            class A {
+                void f() {
+                    int value = 1;
+                }
+                void f() {
+                        int value = 1;
+                }
+                void g() {
+                    int value = 1;
+                }
+            }""";
+
+    private final SonarQubeConnection connection = new SonarQubeConnection("http://sonarqube", "", "");
+    private final AISuggestionService aiSuggestionService = mock(AISuggestionService.class);
+    private final SourceService sourceService = mock(SourceService.class);
+    private final AISuggestionCache cache = mock(AISuggestionCache.class);
+    private final SourceFile sourceFile = SourceFile.of(SOURCE);
+
+    @BeforeEach
+    void setUp() {
+        when(sourceService.getSourceFile(connection, COMPONENT)).thenReturn(sourceFile);
+    }
+
+    @Test
+    void reusesTheFixOfTheSameCodeMovedAndIndentedForTheOtherIssues() throws Exception {
+        var first = issue("first", 3, "Make value final");
+        var second = issue("second", 6, "Make value final");
+        fixes(Map.of("first", List.of(new AISuggestion.Change(3, 3, "        final int value = 1;"))));
+
+        var templates = newFixTemplates(true);
+        templates.fetch(first);
+        var fix = templates.fetch(second).fix();
+
+        assertThat(fix.issueId()).isEqualTo("second");
+        assertThat(fix.changes()).containsExactly(new AISuggestion.Change(6, 6, "            final int value = 1;"));
+        assertThat(templates.reused()).isEqualTo(1);
+        verify(aiSuggestionService, times(1)).generate(eq(connection), any(), anyString());
+        verify(cache).put("second", sourceFile.hash(), fix);
+    }
+
+    @Test
+    void asksForTheFixOfIssuesWithAnotherMessage() throws Exception {
+        var first = issue("first", 3, "Make value final");
+        var second = issue("second", 6, "Rename value");
+        fixes(Map.of("first", List.of(new AISuggestion.Change(3, 3, "        final int value = 1;")),
+                "second", List.of(new AISuggestion.Change(6, 6, "            int renamed = 1;"))));
+
+        var templates = newFixTemplates(true);
+        templates.fetch(first);
+
+        assertThat(templates.fetch(second).fix().changes())
+                .containsExactly(new AISuggestion.Change(6, 6, "            int renamed = 1;"));
+        assertThat(templates.reused()).isZero();
+    }
+
+    @Test
+    void asksForTheFixOfIssuesWithoutMessageOrTextRange() throws Exception {
+        var withoutMessage = issue("first", 3, "");
+        var withoutTextRange = issue("second", 6, "Make value final").toBuilder().clearTextRange().setLine(6).build();
+        var third = issue("third", 9, "");
+        fixes(Map.of("first", List.of(new AISuggestion.Change(3, 3, "        final int value = 1;")),
+                "second", List.of(new AISuggestion.Change(6, 6, "            final int value = 1;")),
+                "third", List.of(new AISuggestion.Change(9, 9, "        final int value = 1;"))));
+
+        var templates = newFixTemplates(true);
+        templates.fetch(withoutMessage);
+        templates.fetch(withoutTextRange);
+        templates.fetch(third);
+
+        assertThat(templates.reused()).isZero();
+        verify(aiSuggestionService, times(3)).generate(eq(connection), any(), anyString());
+    }
+
+    @Test
+    void reusesAnInsertionBetweenTheSameLines() throws Exception {
+        var first = issue("first", 3, "Document value");
+        var second = issue("second", 6, "Document value");
+        fixes(Map.of("first", List.of(new AISuggestion.Change(3, 2, "        // the value"))));
+
+        var templates = newFixTemplates(true);
+        templates.fetch(first);
+
+        assertThat(templates.fetch(second).fix().changes())
+                .containsExactly(new AISuggestion.Change(6, 5, "            // the value"));
+    }
+
+    @Test
+    void asksForTheFixOfAnInsertionAfterAnotherLine() throws Exception {
+        var first = issue("first", 3, "Document value");
+        var second = issue("second", 9, "Document value");
+        fixes(Map.of("first", List.of(new AISuggestion.Change(3, 2, "        // the value")),
+                "second", List.of(new AISuggestion.Change(9, 8, "        // the value of g"))));
+
+        var templates = newFixTemplates(true);
+        templates.fetch(first);
+
+        assertThat(templates.fetch(second).fix().changes())
+                .containsExactly(new AISuggestion.Change(9, 8, "        // the value of g"));
+        assertThat(templates.reused()).isZero();
+    }
+
+    @Test
+    void asksForEveryFixWhenReuseIsOff() throws Exception {
+        fixes(Map.of("first", List.of(new AISuggestion.Change(3, 3, "        final int value = 1;")),
+                "second", List.of(new AISuggestion.Change(6, 6, "            final int value = 1;"))));
+
+        var templates = newFixTemplates(false);
+        templates.fetch(issue("first", 3, "Make value final"));
+        templates.fetch(issue("second", 6, "Make value final"));
+
+        assertThat(templates.reused()).isZero();
+        verify(aiSuggestionService, times(2)).generate(eq(connection), any(), anyString());
+    }
+
+    private FixTemplates newFixTemplates(boolean reuse) {
+        return new FixTemplates(aiSuggestionService, sourceService, cache, connection, reuse, 4);
+    }
+
+    private void fixes(Map<String, List<AISuggestion.Change>> changesByIssue) throws Exception {
+        when(aiSuggestionService.generate(eq(connection), any(), eq(sourceFile.hash()))).thenAnswer(invocation -> {
+            Issue issue = invocation.getArgument(1);
+            var fix = new AISuggestion("fix-" + issue.getKey(), issue.getKey(), "Because",
+                    changesByIssue.get(issue.getKey()));
+            return new IssueAndFix(issue.getComponent(), issue.getRule(), fix);
+        });
+    }
+
+    private static Issue issue(String key, int line, String message) {
+        return Issue.newBuilder()
+                .setKey(key)
+                .setRule("java:S1234")
+                .setMessage(message)
+                .setComponent(COMPONENT)
+                .setLine(line)
+                .setTextRange(TextRange.newBuilder().setStartLine(line).setEndLine(line))
+                .build();
+    }
+}
@@ -0,0 +1,68 @@
+package org.vilojona.services;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A scratch git repository, to check that the patches written apply with git
+ * to the same files as with {@link FilePatch#apply()}.
+ */
+final class GitRepository {
+
+    private final Path directory;
+
+    private GitRepository(Path directory) {
+        this.directory = directory;
+    }
+
+    static boolean isGitAvailable() {
+        try {
+            return new ProcessBuilder("git", "--version").start().waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    static GitRepository init(Path directory) throws IOException, InterruptedException {
+        var repository = new GitRepository(Files.createDirectories(directory));
+        repository.git("init", "-q");
+        repository.git("config", "user.name", "Tester");
+        repository.git("config", "user.email", "tester@example.com");
+        repository.git("config", "core.autocrlf", "false");
+        repository.git("config", "commit.gpgsign", "false");
+        return repository;
+    }
+
+    Path directory() {
+        return directory;
+    }
+
+    void commit(String path, String content) throws IOException, InterruptedException {
+        var file = directory.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        git("add", path);
+        git("commit", "-q", "-m", "Add " + path);
+    }
+
+    String read(String path) throws IOException {
+        return Files.readString(directory.resolve(path), StandardCharsets.UTF_8);
+    }
+
+    void git(String... args) throws IOException, InterruptedException {
+        var command = new ArrayList<>(List.of("git"));
+        command.addAll(List.of(args));
+        var process = new ProcessBuilder(command).directory(directory.toFile()).redirectErrorStream(true).start();
+        var output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        if (process.waitFor() != 0) {
+            throw new IOException(String.join(" ", command) + " failed: " + output);
+        }
+    }
+}
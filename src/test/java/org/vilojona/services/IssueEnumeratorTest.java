@@ -0,0 +1,79 @@
+package org.vilojona.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.sonarqube.ws.Common;
+import org.sonarqube.ws.Issues.Issue;
+import org.sonarqube.ws.Issues.SearchWsResponse;
+import org.sonarqube.ws.client.WsClient;
+import org.sonarqube.ws.client.issues.IssuesService;
+import org.sonarqube.ws.client.issues.SearchRequest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+
+class IssueEnumeratorTest {
+
+    private static final int SLICE_TOTAL = 600;
+
+    @Test
+    void listsOnlyTheSlicesThatAreNotSplitWithFullPages() throws Exception {
+        var requests = new ConcurrentLinkedQueue<SearchRequest>();
+        var wsClient = mock(WsClient.class);
+        var issues = mock(IssuesService.class);
+        when(wsClient.issues()).thenReturn(issues);
+        when(issues.search(any(SearchRequest.class))).thenAnswer(invocation -> {
+            SearchRequest request = invocation.getArgument(0);
+            requests.add(request);
+            return response(request);
+        });
+        var listed = new ConcurrentLinkedQueue<Issue>();
+        var listable = new AtomicLong();
+        var enumerator = new IssueEnumerator(wsClient, new IssueQuery("project", null, null), 4,
+                (page, sliceTotal) -> {
+                    listed.addAll(page);
+                    listable.addAndGet(sliceTotal);
+                },
+                new ApiMetrics(ObservationRegistry.NOOP, new SimpleMeterRegistry()), new CallStats());
+
+        enumerator.enumerate(List.of(IssueSlice.ALL));
+
+        assertThat(listed).hasSize(2 * SLICE_TOTAL);
+        assertThat(listable).hasValue(2 * SLICE_TOTAL);
+        assertThat(requests).filteredOn(request -> request.getCreatedAfter() == null)
+                .extracting(SearchRequest::getPs).containsOnly("1");
+        assertThat(requests).filteredOn(request -> request.getPs().equals("500"))
+                .extracting(SearchRequest::getP).containsExactlyInAnyOrder("1", "2", "1", "2");
+    }
+
+    /**
+     * Too many issues for the whole project, created over two days, and few
+     * enough in each half of that window.
+     */
+    private static SearchWsResponse response(SearchRequest request) {
+        if (request.getCreatedAfter() == null) {
+            var creationDate = "true".equals(request.getAsc()) ? "2024-01-01T00:00:00+0000"
+                    : "2024-01-03T00:00:00+0000";
+            return SearchWsResponse.newBuilder()
+                    .setPaging(Common.Paging.newBuilder().setTotal(IssueEnumerator.MAX_RESULTS + 1))
+                    .addIssues(Issue.newBuilder().setKey("first").setCreationDate(creationDate))
+                    .build();
+        }
+        var pageSize = Integer.parseInt(request.getPs());
+        var first = (Integer.parseInt(request.getP()) - 1) * pageSize;
+        var last = Math.min(first + pageSize, SLICE_TOTAL);
+        var response = SearchWsResponse.newBuilder().setPaging(Common.Paging.newBuilder().setTotal(SLICE_TOTAL));
+        IntStream.range(first, last).forEach(index -> response.addIssues(
+                Issue.newBuilder().setKey(request.getCreatedAfter() + "-" + index)));
+        return response.build();
+    }
+}
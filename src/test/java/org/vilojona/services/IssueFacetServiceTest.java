@@ -0,0 +1,75 @@
+package org.vilojona.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.sonarqube.ws.Common;
+import org.sonarqube.ws.Common.Severity;
+import org.sonarqube.ws.Issues.Issue;
+import org.sonarqube.ws.Issues.SearchWsResponse;
+import org.sonarqube.ws.client.WsClient;
+import org.sonarqube.ws.client.issues.IssuesService;
+import org.sonarqube.ws.client.issues.SearchRequest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+
+class IssueFacetServiceTest {
+
+    @Test
+    void narrowsTheDirectoriesOfAllTheProjectsToTheFolderAndItsSubdirectories() {
+        var connection = new SonarQubeConnection("http://sonarqube", "", "");
+        var clients = mock(SonarQubeClients.class);
+        var wsClient = mock(WsClient.class);
+        var issues = mock(IssuesService.class);
+        when(clients.wsClient(connection)).thenReturn(wsClient);
+        when(wsClient.issues()).thenReturn(issues);
+        when(issues.search(any(SearchRequest.class))).thenReturn(SearchWsResponse.newBuilder()
+                .setPaging(Common.Paging.newBuilder().setTotal(10))
+                .setFacets(Common.Facets.newBuilder().addFacets(Common.Facet.newBuilder().setProperty("directories")
+                        .addValues(Common.FacetValue.newBuilder().setVal("src/main").setCount(4))
+                        .addValues(Common.FacetValue.newBuilder().setVal("src/main/java").setCount(3))
+                        .addValues(Common.FacetValue.newBuilder().setVal("src/mainframe").setCount(2))
+                        .addValues(Common.FacetValue.newBuilder().setVal("/").setCount(1))))
+                .build());
+        var service = new IssueFacetService(clients, mock(FolderResolver.class),
+                new ApiMetrics(ObservationRegistry.NOOP, new SimpleMeterRegistry()));
+
+        var facets = service.facets(connection, new IssueQuery(PortfolioScanService.ALL_PROJECTS, null, "src/main"));
+
+        assertThat(facets.counts().get(IssueStore.Field.FOLDER)).containsOnlyKeys("src/main", "src/main/java");
+    }
+
+    @Test
+    void countsTheIssuesWithAnAIFixOfEveryDirectoryWhateverTheColonsOfTheProjectKey() {
+        var store = new IssueStore();
+        store.addAll(List.of(
+                issue("AZ-1", "org.example:app", "org.example:app:src/main/A.java"),
+                issue("AZ-2", "org.example:app", "org.example:app:src/main/B.java"),
+                issue("AZ-3", "org.example:app", "org.example:app:pom.xml"),
+                issue("AZ-4", "other", "other:src/main/C.java")));
+        var facets = new IssueFacetService.IssueFacets(10, Map.of(IssueStore.Field.FOLDER,
+                Map.of("src/main", 8L, "/", 2L)));
+
+        assertThat(facets.withAIFix(store)).containsExactlyInAnyOrder(
+                new IssueFacetService.FacetCount(IssueStore.Field.FOLDER, "src/main", 8, 3),
+                new IssueFacetService.FacetCount(IssueStore.Field.FOLDER, "/", 2, 1));
+    }
+
+    private static Issue issue(String key, String project, String component) {
+        return Issue.newBuilder()
+                .setKey(key)
+                .setProject(project)
+                .setSeverity(Severity.MAJOR)
+                .setRule("java:S100")
+                .setComponent(component)
+                .setLine(1)
+                .build();
+    }
+}
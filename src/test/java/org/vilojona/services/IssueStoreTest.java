@@ -0,0 +1,137 @@
+package org.vilojona.services;
+
+import static java.util.Map.entry;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.sonarqube.ws.Common.Severity;
+import org.sonarqube.ws.Common.TextRange;
+import org.sonarqube.ws.Issues.Issue;
+
+class IssueStoreTest {
+
+    private final IssueStore store = new IssueStore();
+
+    @Test
+    void keepsTheFieldsOfTheRowsOfTheIssues() {
+        var issue = issue(1, "project", Severity.MAJOR, "java:S100", "project:src/main/A.java", 12).toBuilder()
+                .setMessage("Rename this method")
+                .setTextRange(TextRange.newBuilder().setStartLine(12).setEndLine(14))
+                .build();
+        var withoutTextRange = issue(2, "project", Severity.INFO, "java:S101", "project:B.java", 0);
+
+        store.addAll(List.of(issue, withoutTextRange));
+
+        assertThat(store.issues()).containsExactly(IssueRow.of(issue).toIssue(),
+                IssueRow.of(withoutTextRange).toIssue());
+        assertThat(store.issues().getFirst().getTextRange().getEndLine()).isEqualTo(14);
+        assertThat(store.issues().getFirst().getMessage()).isEqualTo("Rename this method");
+        assertThat(store.issues().getLast().hasTextRange()).isFalse();
+    }
+
+    @Test
+    void fetchesTheIssuesMatchingAFilterInTheOrderOfTheSortWhateverTheOrderTheyWereAddedIn() {
+        var issues = randomIssues(2_000);
+        var sorts = List.of(new IssueStore.Sort(IssueStore.Field.SEVERITY, true),
+                new IssueStore.Sort(IssueStore.Field.FOLDER, false));
+        var filter = new IssueStore.Filter(null, null, "s10", null);
+        var expected = issues.stream().map(IssueRow::of).filter(row -> row.rule().contains("S10"))
+                .sorted(Comparator.comparing(IssueRow::severity).reversed()
+                        .thenComparing(row -> row.component().substring(0, row.component().lastIndexOf('/')))
+                        .thenComparing(IssueRow::component)
+                        .thenComparingInt(IssueRow::line)
+                        .thenComparing(IssueRow::key))
+                .toList();
+
+        // sorted, then added to and sorted again
+        store.addAll(issues.subList(0, 500));
+        assertThat(store.fetch(filter, sorts, 0, 10)).hasSize(10);
+        store.addAll(issues.subList(500, issues.size()));
+
+        assertThat(store.count(filter)).isEqualTo(expected.size());
+        assertThat(store.fetch(filter, sorts, 0, Integer.MAX_VALUE)).isEqualTo(expected);
+        assertThat(store.fetch(filter, sorts, 100, 50)).isEqualTo(expected.subList(100, 150));
+    }
+
+    @Test
+    void matchesTheSeveritiesExactlyAndTheOtherFieldsIgnoringCaseAnywhere() {
+        store.addAll(List.of(
+                issue(1, "Alpha", Severity.MAJOR, "java:S100", "Alpha:src/A.java", 1),
+                issue(2, "beta", Severity.MINOR, "java:S200", "beta:src/B.java", 2),
+                issue(3, "alphabet", Severity.MAJOR, "java:S100", "alphabet:C.java", 3)));
+
+        assertThat(keys(new IssueStore.Filter("ALPHA", null, null, null))).containsExactly("AZ-1", "AZ-3");
+        assertThat(keys(new IssueStore.Filter(null, "MAJOR", null, null))).containsExactly("AZ-1", "AZ-3");
+        assertThat(keys(new IssueStore.Filter(null, "MAJ", null, null))).isEmpty();
+        assertThat(keys(new IssueStore.Filter("alpha", "MAJOR", null, "src/"))).containsExactly("AZ-1");
+        assertThat(keys(new IssueStore.Filter(" ", null, "", null))).containsExactly("AZ-1", "AZ-2", "AZ-3");
+    }
+
+    @Test
+    void countsByFieldMostFrequentFirst() {
+        store.addAll(List.of(
+                issue(1, "project", Severity.MAJOR, "java:S100", "project:src/A.java", 1),
+                issue(2, "project", Severity.MINOR, "java:S100", "project:src/B.java", 2),
+                issue(3, "project", Severity.MAJOR, "java:S200", "project:C.java", 3)));
+
+        assertThat(store.countBy(IssueStore.Field.RULE, IssueStore.Filter.NONE))
+                .containsExactly(entry("java:S100", 2), entry("java:S200", 1));
+        assertThat(store.countBy(IssueStore.Field.FOLDER, IssueStore.Filter.NONE))
+                .containsExactly(entry("project:src", 2), entry("project:", 1));
+        assertThat(store.countBy(IssueStore.Field.SEVERITY, new IssueStore.Filter(null, null, "S100", null)))
+                .containsOnly(entry("MAJOR", 1), entry("MINOR", 1));
+    }
+
+    @Test
+    void countsTheFoldersOfProjectsWhoseKeysHaveColons() {
+        store.addAll(List.of(
+                issue(1, "org.example:app", Severity.MAJOR, "java:S100", "org.example:app:src/A.java", 1),
+                issue(2, "org.example:app", Severity.MAJOR, "java:S100", "org.example:app:pom.xml", 2)));
+
+        assertThat(store.countBy(IssueStore.Field.FOLDER, IssueStore.Filter.NONE))
+                .containsOnly(entry("org.example:app:src", 1), entry("org.example:app:", 1));
+    }
+
+    @Test
+    void matchesTheIssuesAddedSinceTheLastFilter() {
+        var filter = new IssueStore.Filter(null, null, "S100", null);
+        store.addAll(List.of(issue(1, "project", Severity.MAJOR, "java:S100", "project:A.java", 1)));
+        assertThat(store.count(filter)).isEqualTo(1);
+
+        store.addAll(List.of(issue(2, "project", Severity.MAJOR, "java:S100", "project:A.java", 2)));
+
+        assertThat(store.count(filter)).isEqualTo(2);
+    }
+
+    private List<String> keys(IssueStore.Filter filter) {
+        return store.fetch(filter, List.of(), 0, Integer.MAX_VALUE).stream().map(IssueRow::key).sorted().toList();
+    }
+
+    private static List<Issue> randomIssues(int count) {
+        var random = new Random(42);
+        var issues = new ArrayList<Issue>(count);
+        for (var index = 0; index < count; index++) {
+            var project = "project-" + random.nextInt(3);
+            var component = project + ":src/dir" + random.nextInt(10) + "/File" + random.nextInt(5) + ".java";
+            issues.add(issue(index, project, Severity.values()[random.nextInt(5)],
+                    "java:S" + (100 + random.nextInt(20)), component, 1 + random.nextInt(100)));
+        }
+        return issues;
+    }
+
+    private static Issue issue(int index, String project, Severity severity, String rule, String component, int line) {
+        return Issue.newBuilder()
+                .setKey("AZ-" + index)
+                .setProject(project)
+                .setSeverity(severity)
+                .setRule(rule)
+                .setComponent(component)
+                .setLine(line)
+                .build();
+    }
+}
@@ -0,0 +1,103 @@
+package org.vilojona.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonarqube.ws.Issues.Issue;
+
+class LocalPatchServiceTest {
+
+    private static final String ANALYZED = "class A {\n    int a = 1;\n    int b = 2;\n}\n";
+
+    private final SonarQubeConnection connection = new SonarQubeConnection("http://sonarqube", "", "");
+    private final ExportService exportService = mock(ExportService.class);
+    private final SourceService sourceService = mock(SourceService.class);
+    private final LocalPatchService localPatchService = new LocalPatchService(exportService, sourceService);
+
+    @TempDir
+    Path root;
+
+    @Test
+    void appliesTheInsertionsBetweenTheSameLinesAsInTheAnalyzedSource() throws Exception {
+        // changed since it was analyzed, but not around the insertion
+        Files.writeString(root.resolve("A.java"), ANALYZED.replace("int b = 2", "int b = 3"));
+        when(sourceService.getSourceFile(connection, "project:A.java")).thenReturn(SourceFile.of(ANALYZED));
+        var issue = issue("A-1", "project:A.java");
+        fixes(Map.of(issue, new AISuggestion.Change(2, 1, "    // a")));
+
+        var result = localPatchService.applyFixes(connection, root, List.of(issue));
+
+        assertThat(result.applied()).containsExactly(issue);
+        assertThat(Files.readString(root.resolve("A.java")))
+                .isEqualTo("class A {\n    // a\n    int a = 1;\n    int b = 3;\n}\n");
+    }
+
+    @Test
+    void refusesTheInsertionsWhoseLinesAroundChanged() throws Exception {
+        var local = ANALYZED.replace("int a = 1", "int a = 0");
+        Files.writeString(root.resolve("A.java"), local);
+        when(sourceService.getSourceFile(connection, "project:A.java")).thenReturn(SourceFile.of(ANALYZED));
+        var issue = issue("A-1", "project:A.java");
+        fixes(Map.of(issue, new AISuggestion.Change(3, 2, "    // b")));
+
+        var result = localPatchService.applyFixes(connection, root, List.of(issue));
+
+        assertThat(result.applied()).isEmpty();
+        assertThat(result.conflicts()).containsExactly(
+                new LocalApplyResult.Conflict(issue, "A.java changed since it was analyzed"));
+        assertThat(Files.readString(root.resolve("A.java"))).isEqualTo(local);
+    }
+
+    @Test
+    void reportsTheFixesOfAFileThatFailsAsConflictsAndPatchesTheOthers() throws Exception {
+        Files.writeString(root.resolve("A.java"), ANALYZED);
+        Files.writeString(root.resolve("B.java"), ANALYZED);
+        when(sourceService.getSourceFile(connection, "project:A.java")).thenThrow(new IllegalStateException("gone"));
+        when(sourceService.getSourceFile(connection, "project:B.java")).thenReturn(SourceFile.of(ANALYZED));
+        var inA = issue("A-1", "project:A.java");
+        var inB = issue("B-1", "project:B.java");
+        fixes(Map.of(inA, new AISuggestion.Change(2, 2, "    final int a = 1;"),
+                inB, new AISuggestion.Change(2, 2, "    final int a = 1;")));
+
+        var result = localPatchService.applyFixes(connection, root, List.of(inA, inB));
+
+        assertThat(result.filesChanged()).isEqualTo(1);
+        assertThat(result.applied()).containsExactly(inB);
+        assertThat(result.conflicts()).containsExactly(
+                new LocalApplyResult.Conflict(inA, "A.java could not be patched: gone"));
+        assertThat(Files.readString(root.resolve("B.java"))).contains("final int a");
+    }
+
+    private void fixes(Map<Issue, AISuggestion.Change> changesByIssue) throws Exception {
+        doAnswer(invocation -> {
+            List<Issue> issues = invocation.getArgument(1);
+            ExportService.FixWriter writer = invocation.getArgument(2);
+            for (var issue : issues) {
+                var fix = new AISuggestion("fix-" + issue.getKey(), issue.getKey(), "Because",
+                        List.of(changesByIssue.get(issue)));
+                writer.write(issue, new IssueAndFix(issue.getComponent(), issue.getRule(), fix));
+            }
+            return null;
+        }).when(exportService).fetchAiSuggestionsInOrder(eq(connection), any(), any());
+    }
+
+    private static Issue issue(String key, String component) {
+        return Issue.newBuilder()
+                .setKey(key)
+                .setProject("project")
+                .setRule("java:S1234")
+                .setComponent(component)
+                .build();
+    }
+}
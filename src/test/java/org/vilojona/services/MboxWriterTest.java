@@ -0,0 +1,92 @@
+package org.vilojona.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonarqube.ws.Issues.Issue;
+
+class MboxWriterTest {
+
+    private static final String AUTHOR = "Bulk Fix <bulk-fix@example.com>";
+    private static final String LF_SOURCE = "class A {\n    int a = 1;\n    int b = 2;\n}\n";
+    private static final String CRLF_SOURCE = "class B {\r\n    int a = 1;\r\n    int b = 2;\r\n}";
+
+    private final SonarQubeConnection connection = new SonarQubeConnection("http://sonarqube", "", "");
+    private final SourceService sourceService = mock(SourceService.class);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writesOnePatchPerFileThatGitAmApplies() throws Exception {
+        assumeTrue(GitRepository.isGitAvailable(), "git is needed to apply the patches");
+        var repository = GitRepository.init(directory.resolve("repository"));
+        repository.commit("src/A.java", LF_SOURCE);
+        repository.commit("src/B.java", CRLF_SOURCE);
+        source("project:src/A.java", LF_SOURCE);
+        source("project:src/B.java", CRLF_SOURCE);
+
+        var mbox = export(List.of(
+                fix("project:src/A.java", "A-1", new AISuggestion.Change(2, 2, "    final int a = 1;")),
+                fix("project:src/A.java", "A-2", new AISuggestion.Change(3, 3, "    final int b = 2;")),
+                fix("project:src/B.java", "B-1", new AISuggestion.Change(3, 3, "    final int b = 2;"))));
+
+        repository.git("am", "--keep-cr", mbox.toString());
+
+        assertThat(repository.read("src/A.java"))
+                .isEqualTo("class A {\n    final int a = 1;\n    final int b = 2;\n}\n");
+        assertThat(repository.read("src/B.java"))
+                .isEqualTo("class B {\r\n    int a = 1;\r\n    final int b = 2;\r\n}");
+    }
+
+    @Test
+    void leavesOutTheFixesOverlappingAnotherOfTheirFile() throws Exception {
+        source("project:src/A.java", LF_SOURCE);
+
+        var mbox = export(List.of(
+                fix("project:src/A.java", "A-1", new AISuggestion.Change(2, 3, "    final int a = 1, b = 2;")),
+                fix("project:src/A.java", "A-2", new AISuggestion.Change(3, 3, "    final int b = 2;"))));
+
+        var patches = Files.readString(mbox);
+        assertThat(patches).contains("Subject: [PATCH] Fix 1 issue in src/A.java\n")
+                .contains("java:S1234: http://sonarqube/project/issues?id=project&open=A-1\n")
+                .contains("    Because of A-1\n")
+                .doesNotContain("A-2");
+    }
+
+    private Path export(List<IssueAndFix> fixes) throws Exception {
+        var prefix = directory.resolve("export").toString();
+        try (var writer = new MboxWriter(connection, sourceService, prefix, AUTHOR, ExportOptions.DEFAULT)) {
+            for (var fix : fixes) {
+                writer.write(issue(fix), fix);
+            }
+        }
+        return Path.of(prefix + "-fixes.mbox");
+    }
+
+    private void source(String component, String text) {
+        when(sourceService.getSourceFile(connection, component)).thenReturn(SourceFile.of(text));
+    }
+
+    private static IssueAndFix fix(String component, String issueKey, AISuggestion.Change change) {
+        return new IssueAndFix(component, "java:S1234",
+                new AISuggestion("fix-" + issueKey, issueKey, "Because of " + issueKey, List.of(change)));
+    }
+
+    private static Issue issue(IssueAndFix fix) {
+        return Issue.newBuilder()
+                .setKey(fix.fix().issueId())
+                .setProject("project")
+                .setRule(fix.rule())
+                .setComponent(fix.file())
+                .build();
+    }
+}
@@ -0,0 +1,79 @@
+package org.vilojona.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class SonarLintPayloadWriterTest {
+
+    private static final String PATH = "src/main/java/A.java";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SonarLintPayloadWriter writer = new SonarLintPayloadWriter(objectMapper);
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("fixes")
+    void writesTheBytesOfTheSerializedSuggestion(String name, String source, AISuggestion fix) throws Exception {
+        var sourceFile = SourceFile.of(source);
+
+        var payload = writer.write(fix, sourceFile, PATH);
+
+        assertThat(payload.toByteArray()).isEqualTo(objectMapper.writeValueAsBytes(suggestion(fix, sourceFile)));
+    }
+
+    static Stream<Arguments> fixes() {
+        var source = "class A {\n    int a = 1;\n\n    String s = \"\\t\";\n}\n";
+        return Stream.of(
+                Arguments.of("one line", source,
+                        fix("Make it final", new AISuggestion.Change(2, 2, "    final int a = 1;"))),
+                Arguments.of("several changes of several lines", source, fix("Because",
+                        new AISuggestion.Change(1, 2, "final class A {\n    final int a = 1;"),
+                        new AISuggestion.Change(3, 3, ""),
+                        new AISuggestion.Change(4, 5, "    String s = \"\\t\";\n}"))),
+                Arguments.of("characters to escape", "class \"A\" {\r\n\tchar c = '\u0001';\r\n}\r\n",
+                        fix("Quote \"this\"\nand\tthat \\ \u2028", new AISuggestion.Change(2, 3, "\tchar c = 'é';"))),
+                Arguments.of("characters outside of ASCII", "class Café {\n    String s = \"😀 \u00e9\";\n}",
+                        fix("Écrit en français 😀", new AISuggestion.Change(2, 3, "    String s = \"😀\";\n}"))),
+                Arguments.of("insertions", source, fix("Document it",
+                        new AISuggestion.Change(1, 0, "// A"),
+                        new AISuggestion.Change(3, 2, "    // a"),
+                        new AISuggestion.Change(6, 5, "// end of A"))),
+                Arguments.of("payload larger than estimated", "\"\"\"\"\"\"\"\"\n".repeat(1_000),
+                        fix("\u0001".repeat(1_000), new AISuggestion.Change(1, 1_000, "\u0002".repeat(10_000)))));
+    }
+
+    @Test
+    void refusesTheChangesOutsideOfTheFile() {
+        var sourceFile = SourceFile.of("class A {\n}\n");
+
+        assertThatThrownBy(() -> writer.write(fix("Because", new AISuggestion.Change(2, 4, "}")), sourceFile, PATH))
+                .isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    private static AISuggestion fix(String explanation, AISuggestion.Change... changes) {
+        return new AISuggestion("suggestion-1", "issue-1", explanation, List.of(changes));
+    }
+
+    /**
+     * The suggestion as it was built before being written straight from the
+     * fix and the source.
+     */
+    private static SonarLintSuggestion suggestion(AISuggestion fix, SourceFile sourceFile) {
+        var changes = fix.changes().stream()
+                .map(change -> new SonarLintSuggestion.FileEdit.Change(change.newCode(),
+                        change.endLine() < change.startLine() ? ""
+                                : sourceFile.lines(change.startLine(), change.endLine()),
+                        new SonarLintSuggestion.FileEdit.Change.LineRange(change.startLine(), change.endLine())))
+                .toList();
+        return new SonarLintSuggestion(fix.explanation(), new SonarLintSuggestion.FileEdit(changes, PATH), fix.id());
+    }
+}